@@ -275,6 +275,15 @@ public class Logger {
 		doLog(lr);
 	}
 	
+	public void log(Level level, String msg, Supplier<Object[]> paramsSupplier) {
+		if(!isLoggable(level)) {
+			return;
+		}
+		LogRecord lr = new LogRecord(level, msg);
+		lr.setParameters(paramsSupplier.get());
+		doLog(lr);
+	}
+	
 	public void log(Level level, String msg, Throwable thrown) {
 		if(!isLoggable(level)) {
 			return;
@@ -351,6 +360,18 @@ public class Logger {
 		doLog(lr);
 	}
 	
+	public void logp(Level level, String sourceClass, String sourceMethod, String msg,
+			Supplier<Object[]> paramsSupplier) {
+		if (!isLoggable(level)) {
+			return;
+		}
+		LogRecord lr = new LogRecord(level, msg);
+		lr.setSourceClassName(sourceClass);
+		lr.setSourceMethodName(sourceMethod);
+		lr.setParameters(paramsSupplier.get());
+		doLog(lr);
+	}
+	
 	public void logp(Level level, String sourceClass, String sourceMethod, String msg, Throwable thrown) {
 		if (!isLoggable(level)) {
 			return;
@@ -445,6 +466,21 @@ public class Logger {
 		doLog(lr, bundle);
 	}
 	
+	public void logrb(Level level, String sourceClass, String sourceMethod, ResourceBundle bundle, String msg,
+			Supplier<Object[]> paramsSupplier) {
+		if (!isLoggable(level)) {
+			return;
+		}
+		LogRecord lr = new LogRecord(level, msg);
+		lr.setSourceClassName(sourceClass);
+		lr.setSourceMethodName(sourceMethod);
+		Object params[] = paramsSupplier.get();
+		if (params != null && params.length != 0) {
+			lr.setParameters(params);
+		}
+		doLog(lr, bundle);
+	}
+	
 	@Deprecated
     public void logrb(Level level, String sourceClass, String sourceMethod,
                                         String bundleName, String msg, Throwable thrown) {
@@ -470,6 +506,18 @@ public class Logger {
 		doLog(lr, bundle);
 	}
 	
+	public void logrb(Level level, String sourceClass, String sourceMethod, ResourceBundle bundle,
+			Throwable thrown, Supplier<String> msgSupplier) {
+		if (!isLoggable(level)) {
+			return;
+		}
+		LogRecord lr = new LogRecord(level, msgSupplier.get());
+		lr.setSourceClassName(sourceClass);
+		lr.setSourceMethodName(sourceMethod);
+		lr.setThrown(thrown);
+		doLog(lr, bundle);
+	}
+	
 	public void entering(String sourceClass, String sourceMethod) {
 		logp(Level.FINER, sourceClass, sourceMethod, "ENTRY");
 	}
@@ -491,6 +539,13 @@ public class Logger {
 		logp(Level.FINER, sourceClass, sourceMethod, msg, params);
 	}
 	
+	public void enteringLazy(String sourceClass, String sourceMethod, Supplier<Object[]> paramsSupplier) {
+		if(!isLoggable(Level.FINER)) {
+			return;
+		}
+		entering(sourceClass, sourceMethod, paramsSupplier.get());
+	}
+	
 	public void exiting(String sourceClass, String sourceMethod) {
 		logp(Level.FINER, sourceClass, sourceMethod, "RETURN");
 	}
@@ -499,6 +554,13 @@ public class Logger {
         logp(Level.FINER, sourceClass, sourceMethod, "RETURN {0}", result);
     }
 	
+	public void exitingLazy(String sourceClass, String sourceMethod, Supplier<Object> resultSupplier) {
+		if(!isLoggable(Level.FINER)) {
+			return;
+		}
+		exiting(sourceClass, sourceMethod, resultSupplier.get());
+	}
+	
 	public void throwing(String sourceClass, String sourceMethod, Throwable thrown) {
 		if(!isLoggable(Level.FINER)) {
 			return;
@@ -541,6 +603,10 @@ public class Logger {
 	        log(Level.SEVERE, msgSupplier);
 	 }
 	 
+	 public void warning(Supplier<String> msgSupplier) {
+	        log(Level.WARNING, msgSupplier);
+	 }
+	 
 	 public void info(Supplier<String> msgSupplier) {
 	        log(Level.INFO, msgSupplier);
 	    }
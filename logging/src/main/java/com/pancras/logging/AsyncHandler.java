@@ -0,0 +1,394 @@
+package com.pancras.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <tt>Handler</tt> that hands <tt>LogRecords</tt> over to a target
+ * <tt>Handler</tt> running on a dedicated consumer thread.
+ * <p>
+ * Records are passed through a bounded lock-free ring buffer, so a
+ * logging thread only pays for a few CAS operations and never waits
+ * for the target's I/O.  What happens when the buffer is full is
+ * decided by an {@link OverflowPolicy}; by default the logging thread
+ * waits for the consumer to free a slot.  Records dropped by the policy
+ * are counted per level, see {@link #getDroppedCount(Level)}.
+ * <p>
+ * <b>Configuration:</b>
+ * By default each <tt>AsyncHandler</tt> is initialized using the following
+ * <tt>LogManager</tt> configuration properties where <tt>&lt;handler-name&gt;</tt>
+ * refers to the fully-qualified class-name of the handler.
+ * If properties are not defined
+ * (or have invalid values) then the specified default values are used.
+ * <ul>
+ * <li>   &lt;handler-name&gt;.level
+ *        specifies the level for the <tt>Handler</tt>
+ *        (defaults to <tt>Level.ALL</tt>). </li>
+ * <li>   &lt;handler-name&gt;.filter
+ *        specifies the name of a <tt>Filter</tt> class to use
+ *        (defaults to no <tt>Filter</tt>). </li>
+ * <li>   &lt;handler-name&gt;.size
+ *        defines the ring buffer size, in records; it is rounded up to
+ *        a power of two (defaults to 8192). </li>
+ * <li>   &lt;handler-name&gt;.target
+ *        specifies the name of the target <tt>Handler </tt> class.
+ *        (no default). </li>
+ * <li>   &lt;handler-name&gt;.overflow
+ *        specifies the overflow policy, see {@link OverflowPolicy}
+ *        (defaults to <tt>block</tt>). </li>
+ * <li>   &lt;handler-name&gt;.inferCaller
+ *        tells how the caller of a record is found before the record
+ *        leaves the logging thread: <tt>true</tt> to walk the stack,
+ *        which is done only once for each {@link LogSite}, or
+ *        <tt>false</tt> not to look for it, leaving the source of the
+ *        record unknown (defaults to <tt>true</tt>). </li>
+ * </ul>
+ */
+public class AsyncHandler extends Handler {
+    private final static int DEFAULT_SIZE = 8192;
+    // How long the idle consumer sleeps before it re-checks the buffer,
+    // in case a wake-up was missed.
+    private final static long PARK_NANOS = 1000L * 1000L;
+    // The first pause of a thread waiting for the consumer; it doubles
+    // up to PARK_NANOS.
+    private final static long MIN_PARK_NANOS = 10L * 1000L;
+    private int size;
+    private Handler target;
+    private MpscRingBuffer queue;
+    private Thread consumer;
+    private volatile boolean closed;
+    private volatile boolean consumerParked;
+    // The number of records taken from the buffer and done with: published
+    // by the consumer, or evicted by an overflow policy.
+    private final AtomicLong done = new AtomicLong();
+    private OverflowPolicy policy;
+    private int inferCaller;
+    private final ConcurrentMap<Level, AtomicLong> dropped =
+            new ConcurrentHashMap<Level, AtomicLong>();
+
+    // Private method to configure an AsyncHandler from LogManager
+    // properties and/or default values as specified in the class
+    // javadoc.
+    private void configure() {
+        LogManager manager = LogManager.getLogManager();
+        String cname = getClass().getName();
+
+        size = manager.getIntProperty(cname + ".size", DEFAULT_SIZE);
+        if (size <= 0) {
+            size = DEFAULT_SIZE;
+        }
+        setLevel(manager.getLevelProperty(cname +".level", Level.ALL));
+        setFilter(manager.getFilterProperty(cname +".filter", null));
+        policy = OverflowPolicy.forHandler(manager, cname);
+        inferCaller = CallSiteCache.getMode(manager, cname + ".inferCaller",
+                                            CallSiteCache.ON);
+    }
+
+    /**
+     * Create an <tt>AsyncHandler</tt> and configure it based on
+     * <tt>LogManager</tt> configuration properties.
+     */
+    public AsyncHandler() {
+        sealed = false;
+        configure();
+        sealed = true;
+
+        LogManager manager = LogManager.getLogManager();
+        String handlerName = getClass().getName();
+        String targetName = manager.getProperty(handlerName+".target");
+        if (targetName == null) {
+            throw new RuntimeException("The handler " + handlerName
+                    + " does not specify a target");
+        }
+        Class<?> clz;
+        try {
+            clz = ClassLoader.getSystemClassLoader().loadClass(targetName);
+            target = (Handler) clz.newInstance();
+        } catch (ClassNotFoundException  e) {
+            throw new RuntimeException("AsyncHandler can't load handler target \"" + targetName + "\"" , e);
+        } catch (InstantiationException e) {
+            throw new RuntimeException("AsyncHandler can't load handler target \"" + targetName + "\"" , e);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("AsyncHandler can't load handler target \"" + targetName + "\"" , e);
+        }
+        init();
+    }
+
+    /**
+     * Create an <tt>AsyncHandler</tt>.
+     * <p>
+     * The <tt>AsyncHandler</tt> is configured based on <tt>LogManager</tt>
+     * properties (or their default values) except that the given target
+     * and buffer size arguments are used.
+     *
+     * @param target  the Handler to which to publish output.
+     * @param size    the number of log records to buffer (must be greater than zero)
+     *
+     * @throws IllegalArgumentException if {@code size is <= 0}
+     */
+    public AsyncHandler(Handler target, int size) {
+        if (target == null) {
+            throw new NullPointerException();
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException();
+        }
+        sealed = false;
+        configure();
+        sealed = true;
+        this.target = target;
+        this.size = size;
+        init();
+    }
+
+    // Initialize the buffer and start the consumer thread.
+    private void init() {
+        queue = new MpscRingBuffer(size);
+        consumer = new Thread(new Consumer(), "AsyncHandler");
+        consumer.setDaemon(true);
+        // Avoid keeping a strong reference to an application classloader.
+        consumer.setContextClassLoader(null);
+        consumer.start();
+    }
+
+    /**
+     * Queue a <tt>LogRecord</tt> for publication by the target
+     * <tt>Handler</tt>.
+     * <p>
+     * If the record is loggable it is placed in the ring buffer and this
+     * method returns; the target <tt>Handler</tt> publishes it later on
+     * the consumer thread.  If the buffer is full the record is handed
+     * to the handler's <tt>OverflowPolicy</tt>.
+     *
+     * @param  record  description of the log event. A null record is
+     *                 silently ignored and is not published
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        // The caller can only be inferred on the logging thread, so do
+        // it now before the record moves to the consumer thread.
+        record.getSourceClassName(inferCaller);
+        record.retain();
+        if (!queue.offer(record)) {
+            wakeConsumer();
+            if (!policy.overflow(this, record)) {
+                countDropped(record);
+                return;
+            }
+        }
+        if (consumerParked) {
+            wakeConsumer();
+        }
+    }
+
+    /**
+     * Try to place a record in the buffer, waiting for room if necessary.
+     * <p>
+     * This is meant to be called by an <tt>OverflowPolicy</tt>.  The
+     * record is not checked against the level or filter of the handler.
+     * <p>
+     * When called on the consumer thread, by a target <tt>Handler</tt>
+     * which logs while publishing, this never waits: only the consumer
+     * can make room, so it would wait forever.
+     *
+     * @param record         the record to queue
+     * @param timeoutMillis  the maximum time to wait, in milliseconds;
+     *                       0 means do not wait and a negative value
+     *                       means wait until there is room
+     * @return true if the record was queued, false if the time ran out,
+     *         the handler was closed or the buffer is full and this is
+     *         the consumer thread
+     */
+    public boolean offer(LogRecord record, long timeoutMillis) {
+        long deadline = System.nanoTime() + timeoutMillis * 1000L * 1000L;
+        long pause = MIN_PARK_NANOS;
+        while (!queue.offer(record)) {
+            if (closed || timeoutMillis == 0 || Thread.currentThread() == consumer
+                    || (timeoutMillis > 0 && System.nanoTime() - deadline >= 0)) {
+                return false;
+            }
+            wakeConsumer();
+            pause = backOff(pause);
+        }
+        return true;
+    }
+
+    // Remove the oldest queued record, or return null if there is none.
+    LogRecord evictOldest() {
+        LogRecord record = queue.poll();
+        if (record != null) {
+            done.incrementAndGet();
+        }
+        return record;
+    }
+
+    // Count a record that was dropped instead of being published.
+    void countDropped(LogRecord record) {
+        Level level = record.getLevel();
+        AtomicLong count = dropped.get(level);
+        if (count == null) {
+            AtomicLong fresh = new AtomicLong();
+            count = dropped.putIfAbsent(level, fresh);
+            if (count == null) {
+                count = fresh;
+            }
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Return the number of records of the given level that were dropped
+     * because the buffer was full.
+     *
+     * @param level  a logging level
+     * @return the number of dropped records of that level
+     */
+    public long getDroppedCount(Level level) {
+        AtomicLong count = dropped.get(level);
+        return (count == null) ? 0 : count.get();
+    }
+
+    /**
+     * Return the total number of records that were dropped because the
+     * buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDroppedCount() {
+        long total = 0;
+        for (AtomicLong count : dropped.values()) {
+            total += count.get();
+        }
+        return total;
+    }
+
+    private void wakeConsumer() {
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Wait until every record queued so far has been published and
+     * then flush the target <tt>Handler</tt>.
+     */
+    @Override
+    public void flush() {
+        awaitConsumer(queue.tailCount());
+        target.flush();
+        policy.flush();
+    }
+
+    // Wait until the consumer is done with the given number of records,
+    // or has terminated.
+    private void awaitConsumer(long count) {
+        if (Thread.currentThread() == consumer) {
+            // Called by the target while publishing; waiting would deadlock.
+            return;
+        }
+        long pause = MIN_PARK_NANOS;
+        while (done.get() < count && consumer.isAlive()) {
+            wakeConsumer();
+            pause = backOff(pause);
+        }
+    }
+
+    // Park the current thread for the given time, and return the time
+    // to park it for next.
+    static long backOff(long pause) {
+        LockSupport.parkNanos(pause);
+        return Math.min(pause * 2, PARK_NANOS);
+    }
+
+    /**
+     * Close the <tt>Handler</tt> and free all associated resources.
+     * <p>
+     * Any records still queued are published before the target
+     * <tt>Handler</tt> is closed.
+     *
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     */
+    @Override
+    public void close() throws SecurityException {
+        checkPermission();
+        closed = true;
+        wakeConsumer();
+        if (Thread.currentThread() != consumer) {
+            try {
+                consumer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        target.close();
+        policy.close();
+        setLevel(Level.OFF);
+    }
+
+    /**
+     * Check if this <tt>Handler</tt> would actually queue a given
+     * <tt>LogRecord</tt>.
+     * <p>
+     * This method checks if the <tt>LogRecord</tt> has an appropriate level and
+     * whether it satisfies any <tt>Filter</tt>.  It will return false if the
+     * <tt>LogRecord</tt> is null or if the handler has been closed.
+     * <p>
+     * @param record  a <tt>LogRecord</tt>
+     * @return true if the <tt>LogRecord</tt> would be logged.
+     *
+     */
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        if (closed || record == null) {
+            return false;
+        }
+        return super.isLoggable(record);
+    }
+
+    /**
+     * Return the target <tt>Handler</tt>.
+     *
+     * @return the <tt>Handler</tt> the records are published to
+     */
+    public Handler getTarget() {
+        return target;
+    }
+
+    // The consumer thread: moves records from the ring buffer to the target.
+    private class Consumer implements Runnable {
+        //@Override
+        public void run() {
+            for (;;) {
+                LogRecord record = queue.poll();
+                if (record != null) {
+                    try {
+                        target.publish(record);
+                    } catch (RuntimeException ex) {
+                        // We don't want the consumer to die here, but we
+                        // report the exception to any registered ErrorManager.
+                        reportError(null, ex, ErrorManager.GENERIC_FAILURE);
+                    }
+                    // Only now may flush() go on to flush the target.
+                    done.incrementAndGet();
+                    continue;
+                }
+                // A producer may have claimed a slot it has not filled yet.
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                // Nothing to do.  Tell producers we need a wake-up and
+                // check once more before going to sleep.
+                consumerParked = true;
+                if (queue.isEmpty() && !closed) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                consumerParked = false;
+            }
+            target.flush();
+        }
+    }
+}
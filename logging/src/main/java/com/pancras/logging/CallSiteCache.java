@@ -0,0 +1,64 @@
+package com.pancras.logging;
+
+/**
+ * How the callers of log records are inferred, and the cache of the
+ * callers inferred for {@link LogSite}s.
+ * <p>
+ * Nothing in a record logged through the plain <tt>Logger</tt> methods
+ * tells where it was logged from, short of walking the stack: the same
+ * message may be logged from many places.  So the callers of such
+ * records are never cached.  A <tt>LogSite</tt> created without a source
+ * class and method does identify the place it is logged from, and the
+ * caller inferred for the first record logged at it is remembered by
+ * the site and given to the records logged at it after that.
+ */
+final class CallSiteCache {
+    /**
+     * Callers are not inferred.
+     */
+    static final int OFF = 0;
+    /**
+     * Callers are inferred: from the cache for records logged at a
+     * <tt>LogSite</tt>, by walking the stack for the others.
+     */
+    static final int ON = 1;
+
+    private CallSiteCache() {
+    }
+
+    /**
+     * Parse an <tt>inferCaller</tt> property: <tt>false</tt> for
+     * {@link #OFF} or <tt>true</tt> for {@link #ON}.  If the property
+     * is not defined or has an invalid value, we return the given
+     * default value.
+     */
+    static int getMode(LogManager manager, String name, int defaultValue) {
+        String val = manager.getProperty(name);
+        if (val == null) {
+            return defaultValue;
+        }
+        val = val.trim().toLowerCase();
+        if (val.equals("false")) {
+            return OFF;
+        } else if (val.equals("true")) {
+            return ON;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Set the caller of a record by walking the stack, and remember it
+     * in the site the record was logged at, if any.
+     */
+    static void inferCaller(LogRecord record) {
+        if (!record.walkCaller()) {
+            // Not on the logging thread; there is nothing to remember.
+            return;
+        }
+        LogSite site = record.getLogSite();
+        if (site != null) {
+            site.setCaller(record.getSourceClassName(OFF),
+                           record.getSourceMethodName(OFF));
+        }
+    }
+}
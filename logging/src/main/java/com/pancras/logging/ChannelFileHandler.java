@@ -0,0 +1,573 @@
+package com.pancras.logging;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * File <tt>Handler</tt> writing through a <tt>FileChannel</tt>.
+ * <p>
+ * Records are formatted (or encoded) on the logging thread, without
+ * holding any lock, and then appended to a direct buffer.  One thread
+ * at a time writes the buffer to the file; records published while it
+ * does so are collected in a second buffer and written together by the
+ * next writer, so concurrent logging threads share write system calls.
+ * <p>
+ * File naming, locking and rotation work exactly as for
+ * {@link FileHandler}, and the two handlers will not use each other's
+ * files.
+ * <p>
+ * A <tt>FileChannel</tt> is closed when a thread using it is interrupted.
+ * The interrupt status of the writing thread is therefore cleared while
+ * it writes, and restored afterwards; should an interrupt still close
+ * the channel, the file is opened again for the next records.
+ * <p>
+ * <b>Configuration:</b>
+ * By default each <tt>ChannelFileHandler</tt> is initialized using the following
+ * <tt>LogManager</tt> configuration properties where <tt>&lt;handler-name&gt;</tt>
+ * refers to the fully-qualified class-name of the handler.
+ * If properties are not defined
+ * (or have invalid values) then the specified default values are used.
+ * <ul>
+ * <li>   &lt;handler-name&gt;.level
+ *        specifies the default level for the <tt>Handler</tt>
+ *        (defaults to <tt>Level.ALL</tt>). </li>
+ * <li>   &lt;handler-name&gt;.filter
+ *        specifies the name of a <tt>Filter</tt> class to use
+ *        (defaults to no <tt>Filter</tt>). </li>
+ * <li>   &lt;handler-name&gt;.formatter
+ *        specifies the name of a <tt>Formatter</tt> class to use
+ *        (defaults to <tt>java.util.logging.XMLFormatter</tt>) </li>
+ * <li>   &lt;handler-name&gt;.encoder
+ *        specifies the name of an <tt>Encoder</tt> class to use
+ *        instead of the <tt>Formatter</tt> (defaults to none) </li>
+ * <li>   &lt;handler-name&gt;.encoding
+ *        the name of the character set encoding to use (defaults to
+ *        the default platform encoding). </li>
+ * <li>   &lt;handler-name&gt;.limit
+ *        specifies an approximate maximum amount to write (in bytes)
+ *        to any one file.  If this is zero, then there is no limit.
+ *        A suffix of k, m, g or t gives the size in kilobytes, megabytes,
+ *        gigabytes or terabytes, as in "512m".
+ *        (Defaults to no limit). </li>
+ * <li>   &lt;handler-name&gt;.count
+ *        specifies how many output files to cycle through (defaults to 1). </li>
+ * <li>   &lt;handler-name&gt;.pattern
+ *        specifies a pattern for generating the output file name.  See
+ *        {@link FileHandler} for details. (Defaults to "%h/java%u.log"). </li>
+ * <li>   &lt;handler-name&gt;.append
+ *        specifies whether the handler should append onto
+ *        any existing files (defaults to false). </li>
+ * <li>   &lt;handler-name&gt;.rotation
+ *        specifies how files are rotated: <tt>rename</tt> to rename every
+ *        generation, as <tt>FileHandler</tt> does, or <tt>index</tt> to give
+ *        each new file the next index instead (defaults to rename). </li>
+ * <li>   &lt;handler-name&gt;.compress
+ *        specifies whether files should be compressed with gzip once
+ *        rotated out, in the background (defaults to false). </li>
+ * <li>   &lt;handler-name&gt;.flush
+ *        specifies when buffered records are written to the file:
+ *        <tt>record</tt> writes before every <tt>publish</tt> returns,
+ *        <tt>batch</tt> writes only when the buffer is full or on
+ *        <tt>flush</tt>, and <tt>interval</tt> also writes every
+ *        <tt>flushInterval</tt> milliseconds (defaults to <tt>record</tt>). </li>
+ * <li>   &lt;handler-name&gt;.flushInterval
+ *        the interval for the <tt>interval</tt> flush policy, in
+ *        milliseconds (defaults to 1000). </li>
+ * <li>   &lt;handler-name&gt;.bufferSize
+ *        the size of each of the two buffers, in bytes (defaults to 65536). </li>
+ * </ul>
+ */
+public class ChannelFileHandler extends Handler {
+    private final static int FLUSH_RECORD = 0;
+    private final static int FLUSH_BATCH = 1;
+    private final static int FLUSH_INTERVAL = 2;
+    private final static int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private String pattern;
+    private long limit;      // zero => no limit.
+    private int count;
+    private boolean append;
+    private int flushPolicy;
+    private long flushInterval;
+    private int bufferSize;
+    private boolean indexed;
+    private boolean compress;
+    private LogFileSet fileSet;
+    private volatile Charset charset;
+
+    // Guarded by this: the buffer being filled, and the number of
+    // records copied into it since the handler was opened.
+    private ByteBuffer active;
+    private long appended;
+    private boolean closed;
+
+    // Guarded by writeLock: the buffer being written, the channel and
+    // the number of records known to be written.
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private ByteBuffer spare;
+    private FileChannel channel;
+    private boolean doneHeader;
+    private long size;
+    private volatile long written;
+    private Thread flusher;
+
+    // Private method to configure a ChannelFileHandler from LogManager
+    // properties and/or default values as specified in the class
+    // javadoc.
+    private void configure() {
+        LogManager manager = LogManager.getLogManager();
+        String cname = getClass().getName();
+
+        pattern = manager.getStringProperty(cname + ".pattern", "%h/java%u.log");
+        limit = manager.getLongProperty(cname + ".limit", 0);
+        if (limit < 0) {
+            limit = 0;
+        }
+        count = manager.getIntProperty(cname + ".count", 1);
+        if (count <= 0) {
+            count = 1;
+        }
+        append = manager.getBooleanProperty(cname + ".append", false);
+        indexed = LogFileSet.isIndexed(manager, cname);
+        compress = manager.getBooleanProperty(cname + ".compress", false);
+        String flush = manager.getStringProperty(cname + ".flush", "record");
+        if (flush.equals("batch")) {
+            flushPolicy = FLUSH_BATCH;
+        } else if (flush.equals("interval")) {
+            flushPolicy = FLUSH_INTERVAL;
+        } else {
+            flushPolicy = FLUSH_RECORD;
+        }
+        flushInterval = manager.getIntProperty(cname + ".flushInterval", 1000);
+        if (flushInterval <= 0) {
+            flushInterval = 1000;
+        }
+        bufferSize = manager.getIntProperty(cname + ".bufferSize", DEFAULT_BUFFER_SIZE);
+        if (bufferSize <= 0) {
+            bufferSize = DEFAULT_BUFFER_SIZE;
+        }
+        setLevel(manager.getLevelProperty(cname + ".level", Level.ALL));
+        setFilter(manager.getFilterProperty(cname + ".filter", null));
+        setFormatter(manager.getFormatterProperty(cname + ".formatter", new XMLFormatter()));
+        setEncoder(manager.getEncoderProperty(cname + ".encoder", null));
+        try {
+            setEncoding(manager.getStringProperty(cname +".encoding", null));
+        } catch (Exception ex) {
+            try {
+                setEncoding(null);
+            } catch (Exception ex2) {
+                // doing a setEncoding with null should always work.
+                // assert false;
+            }
+        }
+    }
+
+    /**
+     * Construct a default <tt>ChannelFileHandler</tt>.  This will be configured
+     * entirely from <tt>LogManager</tt> properties (or their default values).
+     *
+     * @exception  IOException if there are IO problems opening the files.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control"))</tt>.
+     * @exception  NullPointerException if pattern property is an empty String.
+     */
+    public ChannelFileHandler() throws IOException, SecurityException {
+        checkPermission();
+        configure();
+        openFiles();
+    }
+
+    /**
+     * Initialize a <tt>ChannelFileHandler</tt> to write to a set of files
+     * with optional append.  When (approximately) the given limit has
+     * been written to one file, another file will be opened.  The
+     * output will cycle through a set of count files.
+     * <p>
+     * The <tt>ChannelFileHandler</tt> is configured based on <tt>LogManager</tt>
+     * properties (or their default values) except that the given pattern
+     * argument is used as the filename pattern, the file limit is
+     * set to the limit argument, and the file count is set to the
+     * given count argument, and the append mode is set to the given
+     * <tt>append</tt> argument.
+     * <p>
+     * The count must be at least 1.
+     *
+     * @param pattern  the pattern for naming the output file
+     * @param limit  the maximum number of bytes to write to any one file
+     * @param count  the number of files to use
+     * @param append  specifies append mode
+     * @exception  IOException if there are IO problems opening the files.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     * @exception  IllegalArgumentException if {@code limit < 0}, or {@code count < 1}.
+     * @exception  IllegalArgumentException if pattern is an empty string
+     */
+    public ChannelFileHandler(String pattern, long limit, int count, boolean append)
+                                        throws IOException, SecurityException {
+        if (limit < 0 || count < 1 || pattern.length() < 1) {
+            throw new IllegalArgumentException();
+        }
+        checkPermission();
+        configure();
+        this.pattern = pattern;
+        this.limit = limit;
+        this.count = count;
+        this.append = append;
+        openFiles();
+    }
+
+    // Private method to lock the file set and open the first file.
+    private void openFiles() throws IOException {
+        LogManager manager = LogManager.getLogManager();
+        manager.checkPermission();
+
+        // Create a lock file.  This grants us exclusive access
+        // to our set of output files, as long as we are alive.
+        fileSet = new LogFileSet(pattern, count, indexed, compress);
+        fileSet.lock();
+
+        active = ByteBuffer.allocateDirect(bufferSize);
+        spare = ByteBuffer.allocateDirect(bufferSize);
+        writeLock.lock();
+        // An interrupt would close the channel; keep it for later.
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (append) {
+                open(true);
+            } else {
+                fileSet.shift();
+                open(false);
+            }
+        } catch (IOException ex) {
+            fileSet.release();
+            throw ex;
+        } finally {
+            writeLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (flushPolicy == FLUSH_INTERVAL) {
+            flusher = new Thread(new Flusher(), "ChannelFileHandler flusher");
+            flusher.setDaemon(true);
+            // Avoid keeping a strong reference to an application classloader.
+            flusher.setContextClassLoader(null);
+            flusher.start();
+        }
+    }
+
+    // Open generation 0.  Called with writeLock held.
+    private void open(boolean append) throws IOException {
+        if (append) {
+            channel = FileChannel.open(fileSet.file(0).toPath(), WRITE, CREATE, APPEND);
+        } else {
+            channel = FileChannel.open(fileSet.file(0).toPath(), WRITE, CREATE, TRUNCATE_EXISTING);
+        }
+        size = channel.size();
+        doneHeader = false;
+    }
+
+    // Open generation 0 again, after its channel was closed by an
+    // interrupt or could not be opened on rotation.  Called with
+    // writeLock held.
+    private void reopen() {
+        channel = null;
+        try {
+            channel = FileChannel.open(fileSet.file(0).toPath(), WRITE, CREATE, APPEND);
+            size = channel.size();
+            if (size == 0) {
+                doneHeader = false;
+            }
+        } catch (IOException ix) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ix, ErrorManager.OPEN_FAILURE);
+        }
+    }
+
+    // Write the head, if not yet done for this file, as StreamHandler
+    // does before the first record.  Called with writeLock held.
+    private void writeHead() throws IOException {
+        if (doneHeader) {
+            return;
+        }
+        doneHeader = true;
+        String head = (getEncoder() != null) ? getEncoder().getHead(this) : getFormatter().getHead(this);
+        writeFully(ByteBuffer.wrap(EncodeBuffer.bom(charset)));
+        writeFully(ByteBuffer.wrap(head.getBytes(EncodeBuffer.textCharset(charset))));
+    }
+
+    // Write the tail and close the current file.  Called with writeLock held.
+    private void closeFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            writeHead();
+            String tail = (getEncoder() != null) ? getEncoder().getTail(this) : getFormatter().getTail(this);
+            writeFully(ByteBuffer.wrap(tail.getBytes(EncodeBuffer.textCharset(charset))));
+            channel.close();
+        } catch (Exception ex) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ex, ErrorManager.CLOSE_FAILURE);
+        }
+        channel = null;
+    }
+
+    // Rotate the set of output files.  Called with writeLock held.
+    private void rotate() {
+        closeFile();
+        fileSet.shift();
+        try {
+            open(false);
+        } catch (IOException ix) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ix, ErrorManager.OPEN_FAILURE);
+        }
+    }
+
+    /**
+     * Set (or change) the character encoding used by this <tt>Handler</tt>.
+     * <p>
+     * The encoding should be set before any <tt>LogRecords</tt> are written
+     * to the <tt>Handler</tt>.
+     *
+     * @param encoding  The name of a supported character encoding.
+     *        May be null, to indicate the default platform encoding.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     * @exception  UnsupportedEncodingException if the named encoding is
+     *          not supported.
+     */
+    @Override
+    public synchronized void setEncoding(String encoding)
+                        throws SecurityException, java.io.UnsupportedEncodingException {
+        super.setEncoding(encoding);
+        charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+    }
+
+    /**
+     * Format and publish a <tt>LogRecord</tt>.
+     * <p>
+     * The record is formatted on the calling thread and added to the
+     * handler's buffer.  Depending on the flush policy it is then
+     * written to the file before this method returns, possibly together
+     * with records published concurrently by other threads.
+     *
+     * @param  record  description of the log event. A null record is
+     *                 silently ignored and is not published
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        EncodeBuffer eb = EncodeBuffer.acquire();
+        try {
+            ByteBuffer buf;
+            try {
+                buf = eb.encode(this, record, EncodeBuffer.textCharset(charset));
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+                return;
+            }
+            append(buf);
+        } finally {
+            eb.release();
+        }
+    }
+
+    // Add an encoded record to the active buffer, and write it out
+    // as the flush policy says.
+    private void append(ByteBuffer buf) {
+        long seq;
+        for (;;) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (buf.remaining() <= active.remaining()) {
+                    active.put(buf);
+                    seq = ++appended;
+                    break;
+                }
+                if (buf.remaining() > active.capacity()) {
+                    seq = -1;
+                    break;
+                }
+            }
+            // The buffer is full; write it out and try again.
+            commit(Long.MAX_VALUE, null);
+        }
+        if (seq < 0) {
+            // Too big for the buffer: write it on its own.
+            commit(Long.MAX_VALUE, buf);
+        } else if (flushPolicy == FLUSH_RECORD) {
+            commit(seq, null);
+        }
+    }
+
+    // Make sure every record up to the given sequence number has been
+    // written, then write the given extra bytes, if any.  Whoever gets
+    // the write lock first writes everybody's records in one go.
+    private void commit(long seq, ByteBuffer extra) {
+        if (extra == null && written >= seq) {
+            return;
+        }
+        writeLock.lock();
+        // An interrupt would close the channel; keep it for later.
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (extra == null && written >= seq) {
+                // Another thread wrote our records while we waited.
+                return;
+            }
+            ByteBuffer buf;
+            long upTo;
+            synchronized (this) {
+                buf = active;
+                active = spare;
+                upTo = appended;
+            }
+            spare = buf;
+            buf.flip();
+            try {
+                if (buf.hasRemaining() || extra != null) {
+                    if (channel == null || !channel.isOpen()) {
+                        reopen();
+                    }
+                    if (channel != null) {
+                        writeHead();
+                        writeFully(buf);
+                        if (extra != null) {
+                            writeFully(extra);
+                        }
+                    }
+                }
+            } catch (ClosedByInterruptException ex) {
+                // Interrupted by another thread while writing.  What
+                // was not written is lost; the next commit reopens
+                // the file.
+                interrupted |= Thread.interrupted();
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+            buf.clear();
+            written = upTo;
+            if (limit > 0 && size >= limit) {
+                // We performed access checks in the "init" method to make sure
+                // we are only initialized from trusted code.  So we assume
+                // it is OK to write the target files, even if we are
+                // currently being called from untrusted code.
+                // So it is safe to raise privilege here.
+                AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                    //@Override
+                    public Object run() {
+                        rotate();
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            writeLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Write all of a buffer to the channel.  Called with writeLock held.
+    private void writeFully(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            size += channel.write(buf);
+        }
+    }
+
+    /**
+     * Write any buffered records to the file.
+     */
+    @Override
+    public void flush() {
+        long seq;
+        synchronized (this) {
+            seq = appended;
+        }
+        commit(seq, null);
+    }
+
+    /**
+     * Close all the files.
+     *
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     */
+    @Override
+    public void close() throws SecurityException {
+        checkPermission();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // Wake the flusher, if any, so that it stops.
+            notifyAll();
+        }
+        flush();
+        writeLock.lock();
+        boolean interrupted = Thread.interrupted();
+        try {
+            closeFile();
+        } finally {
+            writeLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Unlock any lock file.
+        fileSet.release();
+        setLevel(Level.OFF);
+    }
+
+    // Writes the buffered records out at a fixed interval, until the
+    // handler is closed.  It is not stopped by an interrupt, which could
+    // close the channel in the middle of a write.
+    private class Flusher implements Runnable {
+        //@Override
+        public void run() {
+            for (;;) {
+                synchronized (ChannelFileHandler.this) {
+                    if (!closed) {
+                        try {
+                            ChannelFileHandler.this.wait(flushInterval);
+                        } catch (InterruptedException ex) {
+                            // Only close stops us.
+                        }
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                flush();
+            }
+        }
+    }
+}
@@ -12,6 +12,7 @@ public class ConsoleHandler extends StreamHandler {
         setLevel(manager.getLevelProperty(cname +".level", Level.INFO));
         setFilter(manager.getFilterProperty(cname +".filter", null));
         setFormatter(manager.getFormatterProperty(cname +".formatter", new SimpleFormatter()));
+        setEncoder(manager.getEncoderProperty(cname +".encoder", null));
         try {
             setEncoding(manager.getStringProperty(cname +".encoding", null));
         } catch (Exception ex) {
@@ -0,0 +1,83 @@
+package com.pancras.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A per-thread buffer into which handlers that write bytes encode a
+ * record before copying it to their output.
+ * <p>
+ * A buffer is taken with {@link #acquire} and must be given back with
+ * {@link #release}.  If a formatter logs while its record is being
+ * encoded, the nested call gets a buffer of its own.
+ */
+final class EncodeBuffer {
+    // Buffers which grew beyond this are not kept.
+    private final static int MAX_KEPT = 64 * 1024;
+    private final static Charset UTF_16BE = Charset.forName("UTF-16BE");
+
+    private static final ThreadLocal<EncodeBuffer> buffers = new ThreadLocal<EncodeBuffer>() {
+        @Override
+        protected EncodeBuffer initialValue() {
+            return new EncodeBuffer();
+        }
+    };
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private boolean busy;
+
+    private EncodeBuffer() {
+    }
+
+    static EncodeBuffer acquire() {
+        EncodeBuffer eb = buffers.get();
+        if (eb.busy) {
+            eb = new EncodeBuffer();
+        }
+        eb.busy = true;
+        return eb;
+    }
+
+    void release() {
+        busy = false;
+    }
+
+    /**
+     * Encode a record with the handler's <tt>Encoder</tt>, or else its
+     * <tt>Formatter</tt>.
+     *
+     * @return a buffer holding the encoded record, ready to be read;
+     *         it stays valid until the next call or release
+     */
+    ByteBuffer encode(Handler handler, LogRecord record, Charset charset) {
+        buffer.clear();
+        ByteBuffer buf;
+        Encoder encoder = handler.getEncoder();
+        if (encoder != null) {
+            buf = encoder.encode(record, charset, buffer);
+        } else {
+            buf = Encoder.put(buffer, handler.getFormatter().format(record), charset);
+        }
+        if (buf.capacity() <= MAX_KEPT) {
+            buffer = buf;
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Return the charset to encode text with.  The UTF-16 encoder writes
+     * a byte order mark every time, so the big-endian variant is used
+     * instead and the mark is left to the caller, see {@link #bom}.
+     */
+    static Charset textCharset(Charset charset) {
+        return charset.name().equals("UTF-16") ? UTF_16BE : charset;
+    }
+
+    /**
+     * Return the byte order mark to write at the start of a file.
+     */
+    static byte[] bom(Charset charset) {
+        return charset.name().equals("UTF-16") ? new byte[] { (byte) 0xFE, (byte) 0xFF } : new byte[0];
+    }
+}
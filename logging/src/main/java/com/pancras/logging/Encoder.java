@@ -0,0 +1,195 @@
+package com.pancras.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An Encoder renders <tt>LogRecords</tt> straight into bytes.
+ * <p>
+ * A <tt>Formatter</tt> produces a <tt>String</tt> which the handler's
+ * <tt>Writer</tt> must then copy and encode.  A <tt>Handler</tt> with an
+ * <tt>Encoder</tt> instead asks it to append the encoded record to a
+ * <tt>ByteBuffer</tt> that the handler reuses from record to record, and
+ * writes the bytes out as they are.
+ * <p>
+ * Existing formatters can be used as encoders through
+ * {@link FormatterEncoder}.
+ * <p>
+ * Encoders may be shared between handlers, so the methods of this class
+ * must be safe to call from several threads at once.
+ */
+public abstract class Encoder {
+    // Constant strings cached per charset are dropped beyond this.
+    private final static int MAX_CONSTANTS = 1024;
+
+    private static final ConcurrentHashMap<Charset, ConcurrentHashMap<String, byte[]>> constants =
+            new ConcurrentHashMap<Charset, ConcurrentHashMap<String, byte[]>>();
+
+    // One CharsetEncoder per thread, for the charset last used.
+    private static final ThreadLocal<CharsetEncoder> encoders = new ThreadLocal<CharsetEncoder>();
+
+    /**
+     * Construct a new encoder.
+     */
+    protected Encoder() {
+    }
+
+    /**
+     * Encode the given log record.
+     * <p>
+     * The encoded bytes are appended at the position of the buffer.  If
+     * the buffer is too small a larger one is allocated, filled with the
+     * contents of the given one and the new record, and returned instead.
+     *
+     * @param record   the log record to be encoded
+     * @param charset  the character set to use for text
+     * @param buffer   the buffer to append to, in write mode
+     * @return the buffer holding the encoded record, in write mode
+     */
+    public abstract ByteBuffer encode(LogRecord record, Charset charset, ByteBuffer buffer);
+
+    /**
+     * Return the header string for a set of encoded records.
+     * <p>
+     * This base class returns an empty string, but this may be
+     * overridden by subclasses.
+     *
+     * @param   h  The target handler (can be null)
+     * @return  header string
+     */
+    public String getHead(Handler h) {
+        return "";
+    }
+
+    /**
+     * Return the tail string for a set of encoded records.
+     * <p>
+     * This base class returns an empty string, but this may be
+     * overridden by subclasses.
+     *
+     * @param   h  The target handler (can be null)
+     * @return  tail string
+     */
+    public String getTail(Handler h) {
+        return "";
+    }
+
+    /**
+     * Make sure the buffer has room for at least <tt>n</tt> more bytes,
+     * replacing it with a larger one if needed.
+     *
+     * @param buffer  a buffer in write mode
+     * @param n       the number of bytes needed
+     * @return the given buffer, or a larger copy of it
+     */
+    protected static ByteBuffer ensureRemaining(ByteBuffer buffer, int n) {
+        if (buffer.remaining() >= n) {
+            return buffer;
+        }
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + n);
+        ByteBuffer bigger = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity)
+                : ByteBuffer.allocate(capacity);
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    /**
+     * Append a string encoded in the given charset.
+     * <p>
+     * For the ASCII compatible charsets, plain ASCII text is copied
+     * without going through a <tt>CharsetEncoder</tt>.  A null string
+     * is written as <tt>"null"</tt>.
+     *
+     * @param buffer   a buffer in write mode
+     * @param s        the string to append (may be null)
+     * @param charset  the character set to use
+     * @return the given buffer, or a larger copy of it
+     */
+    protected static ByteBuffer put(ByteBuffer buffer, String s, Charset charset) {
+        if (s == null) {
+            s = "null";
+        }
+        int len = s.length();
+        int i = 0;
+        if (isAsciiCompatible(charset)) {
+            buffer = ensureRemaining(buffer, len);
+            for (; i < len; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                buffer.put((byte) c);
+            }
+            if (i == len) {
+                return buffer;
+            }
+        }
+        CharsetEncoder enc = encoders.get();
+        if (enc == null || !enc.charset().equals(charset)) {
+            enc = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            encoders.set(enc);
+        }
+        enc.reset();
+        CharBuffer in = CharBuffer.wrap(s, i, len);
+        buffer = ensureRemaining(buffer, (int) (in.remaining() * enc.averageBytesPerChar()) + 1);
+        for (;;) {
+            CoderResult cr = enc.encode(in, buffer, true);
+            if (cr.isUnderflow()) {
+                cr = enc.flush(buffer);
+                if (cr.isUnderflow()) {
+                    return buffer;
+                }
+            }
+            // Overflow: make room and carry on.
+            buffer = ensureRemaining(buffer, (int) (in.remaining() * enc.maxBytesPerChar()) + 16);
+        }
+    }
+
+    /**
+     * Append a string which is expected to recur, such as a logger or
+     * level name.  The encoded bytes are cached per charset so that the
+     * string is only encoded once.
+     *
+     * @param buffer   a buffer in write mode
+     * @param s        the string to append (may be null)
+     * @param charset  the character set to use
+     * @return the given buffer, or a larger copy of it
+     */
+    protected static ByteBuffer putConstant(ByteBuffer buffer, String s, Charset charset) {
+        if (s == null) {
+            s = "null";
+        }
+        ConcurrentHashMap<String, byte[]> map = constants.get(charset);
+        if (map == null) {
+            constants.putIfAbsent(charset, new ConcurrentHashMap<String, byte[]>());
+            map = constants.get(charset);
+        }
+        byte bytes[] = map.get(s);
+        if (bytes == null) {
+            bytes = s.getBytes(charset);
+            if (map.size() >= MAX_CONSTANTS) {
+                // Most likely the names are not constant after all.
+                map.clear();
+            }
+            map.put(s, bytes);
+        }
+        buffer = ensureRemaining(buffer, bytes.length);
+        buffer.put(bytes);
+        return buffer;
+    }
+
+    // Return true if ASCII characters map to the same single bytes.
+    private static boolean isAsciiCompatible(Charset charset) {
+        String name = charset.name();
+        return name.equals("UTF-8") || name.equals("ISO-8859-1") || name.equals("US-ASCII")
+                || name.equals("windows-1252");
+    }
+}
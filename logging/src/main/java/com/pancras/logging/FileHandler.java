@@ -1,38 +1,35 @@
 package com.pancras.logging;
 
-import static java.nio.file.StandardOpenOption.APPEND;
-import static java.nio.file.StandardOpenOption.CREATE_NEW;
-import static java.nio.file.StandardOpenOption.WRITE;
-
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.channels.FileChannel;
-import java.nio.channels.OverlappingFileLockException;
-import java.nio.file.FileAlreadyExistsException;
-import java.nio.file.Files;
-import java.nio.file.LinkOption;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class FileHandler extends StreamHandler {
+    // How long before the start of a period its file is opened.
+    private static final long PREOPEN_MILLIS = 1000;
+
     private MeteredStream meter;
     private boolean append;
-    private int limit;       // zero => no limit.
+    private long limit;      // zero => no limit.
     private int count;
     private String pattern;
-    private String lockFileName;
-    private FileChannel lockFileChannel;
-    private File files[];
-    private static final int MAX_LOCKS = 100;
-    private static final Set<String> locks = new HashSet<String>();
+    private boolean indexed;
+    private boolean compress;
+    private LogFileSet fileSet;
+    // The next rollover to a new period, when the pattern has date tokens.
+    private ScheduledFuture<?> rollover;
+    // The file of the next period, opened in advance, and its stream.
+    private File nextFile;
+    private MeteredStream nextMeter;
+    // True while a rotation is waiting for the rotation thread.
+    private boolean rotating;
+    private boolean closed;
 
     /**
      * A metered stream is a subclass of OutputStream that
@@ -41,9 +38,9 @@ public class FileHandler extends StreamHandler {
      */
     private class MeteredStream extends OutputStream {
         final OutputStream out;
-        int written;
+        long written;
 
-        MeteredStream(OutputStream out, int written) {
+        MeteredStream(OutputStream out, long written) {
             this.out = out;
             this.written = written;
         }
@@ -78,14 +75,18 @@ public class FileHandler extends StreamHandler {
     }
 
     private void open(File fname, boolean append) throws IOException {
-        int len = 0;
+        meter = openStream(fname, append);
+        setOutputStream(meter);
+    }
+
+    private MeteredStream openStream(File fname, boolean append) throws IOException {
+        long len = 0;
         if (append) {
-            len = (int)fname.length();
+            len = fname.length();
         }
         FileOutputStream fout = new FileOutputStream(fname.toString(), append);
         BufferedOutputStream bout = new BufferedOutputStream(fout);
-        meter = new MeteredStream(bout, len);
-        setOutputStream(meter);
+        return new MeteredStream(bout, len);
     }
 
     /**
@@ -98,7 +99,7 @@ public class FileHandler extends StreamHandler {
         String cname = getClass().getName();
 
         pattern = manager.getStringProperty(cname + ".pattern", "%h/java%u.log");
-        limit = manager.getIntProperty(cname + ".limit", 0);
+        limit = manager.getLongProperty(cname + ".limit", 0);
         if (limit < 0) {
             limit = 0;
         }
@@ -107,9 +108,12 @@ public class FileHandler extends StreamHandler {
             count = 1;
         }
         append = manager.getBooleanProperty(cname + ".append", false);
+        indexed = LogFileSet.isIndexed(manager, cname);
+        compress = manager.getBooleanProperty(cname + ".compress", false);
         setLevel(manager.getLevelProperty(cname + ".level", Level.ALL));
         setFilter(manager.getFilterProperty(cname + ".filter", null));
         setFormatter(manager.getFormatterProperty(cname + ".formatter", new XMLFormatter()));
+        setEncoder(manager.getEncoderProperty(cname + ".encoder", null));
         try {
             setEncoding(manager.getStringProperty(cname +".encoding", null));
         } catch (Exception ex) {
@@ -277,12 +281,44 @@ public class FileHandler extends StreamHandler {
         openFiles();
     }
 
-    private  boolean isParentWritable(Path path) {
-        Path parent = path.getParent();
-        if (parent == null) {
-            parent = path.toAbsolutePath().getParent();
+    /**
+     * Initialize a <tt>FileHandler</tt> to write to a set of files
+     * with optional append.  When (approximately) the given limit has
+     * been written to one file, another file will be opened.  The
+     * output will cycle through a set of count files.
+     * <p>
+     * The <tt>FileHandler</tt> is configured based on <tt>LogManager</tt>
+     * properties (or their default values) except that the given pattern
+     * argument is used as the filename pattern, the file limit is
+     * set to the limit argument, and the file count is set to the
+     * given count argument, and the append mode is set to the given
+     * <tt>append</tt> argument.
+     * <p>
+     * The count must be at least 1.
+     *
+     * @param pattern  the pattern for naming the output file
+     * @param limit  the maximum number of bytes to write to any one file,
+     *               which may exceed <tt>Integer.MAX_VALUE</tt>
+     * @param count  the number of files to use
+     * @param append  specifies append mode
+     * @exception  IOException if there are IO problems opening the files.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     * @exception  IllegalArgumentException if {@code limit < 0}, or {@code count < 1}.
+     * @exception  IllegalArgumentException if pattern is an empty string
+     */
+    public FileHandler(String pattern, long limit, int count, boolean append)
+                                        throws IOException, SecurityException {
+        if (limit < 0 || count < 1 || pattern.length() < 1) {
+            throw new IllegalArgumentException();
         }
-        return parent != null && Files.isWritable(parent);
+        checkPermission();
+        configure();
+        this.pattern = pattern;
+        this.limit = limit;
+        this.count = count;
+        this.append = append;
+        openFiles();
     }
 
     /**
@@ -306,112 +342,18 @@ public class FileHandler extends StreamHandler {
 
         // Create a lock file.  This grants us exclusive access
         // to our set of output files, as long as we are alive.
-        int unique = -1;
-        for (;;) {
-            unique++;
-            if (unique > MAX_LOCKS) {
-                throw new IOException("Couldn't get lock for " + pattern);
-            }
-            // Generate a lock file name from the "unique" int.
-            lockFileName = generate(pattern, 0, unique).toString() + ".lck";
-            // Now try to lock that filename.
-            // Because some systems (e.g., Solaris) can only do file locks
-            // between processes (and not within a process), we first check
-            // if we ourself already have the file locked.
-            synchronized(locks) {
-                if (locks.contains(lockFileName)) {
-                    // We already own this lock, for a different FileHandler
-                    // object.  Try again.
-                    continue;
-                }
-
-                final Path lockFilePath = Paths.get(lockFileName);
-                FileChannel channel = null;
-                int retries = -1;
-                boolean fileCreated = false;
-                while (channel == null && retries++ < 1) {
-                    try {
-                        channel = FileChannel.open(lockFilePath,
-                                CREATE_NEW, WRITE);
-                        fileCreated = true;
-                    } catch (FileAlreadyExistsException ix) {
-                        // This may be a zombie file left over by a previous
-                        // execution. Reuse it - but only if we can actually
-                        // write to its directory.
-                        // Note that this is a situation that may happen,
-                        // but not too frequently.
-                        if (Files.isRegularFile(lockFilePath, LinkOption.NOFOLLOW_LINKS)
-                            && isParentWritable(lockFilePath)) {
-                            try {
-                                channel = FileChannel.open(lockFilePath,
-                                    WRITE, APPEND);
-                            } catch (NoSuchFileException x) {
-                                // Race condition - retry once, and if that
-                                // fails again just try the next name in
-                                // the sequence.
-                                continue;
-                            } catch(IOException x) {
-                                // the file may not be writable for us.
-                                // try the next name in the sequence
-                                break;
-                            }
-                        } else {
-                            // at this point channel should still be null.
-                            // break and try the next name in the sequence.
-                            break;
-                        }
-                    }
-                }
-
-                if (channel == null) continue; // try the next name;
-                lockFileChannel = channel;
-
-                boolean available;
-                try {
-                    available = lockFileChannel.tryLock() != null;
-                    // We got the lock OK.
-                    // At this point we could call File.deleteOnExit().
-                    // However, this could have undesirable side effects
-                    // as indicated by JDK-4872014. So we will instead
-                    // rely on the fact that close() will remove the lock
-                    // file and that whoever is creating FileHandlers should
-                    // be responsible for closing them.
-                } catch (IOException ix) {
-                    // We got an IOException while trying to get the lock.
-                    // This normally indicates that locking is not supported
-                    // on the target directory.  We have to proceed without
-                    // getting a lock.   Drop through, but only if we did
-                    // create the file...
-                    available = fileCreated;
-                } catch (OverlappingFileLockException x) {
-                    // someone already locked this file in this VM, through
-                    // some other channel - that is - using something else
-                    // than new FileHandler(...);
-                    // continue searching for an available lock.
-                    available = false;
-                }
-                if (available) {
-                    // We got the lock.  Remember it.
-                    locks.add(lockFileName);
-                    break;
-                }
-
-                // We failed to get the lock.  Try next file.
-                lockFileChannel.close();
-            }
-        }
-
-        files = new File[count];
-        for (int i = 0; i < count; i++) {
-            files[i] = generate(pattern, i, unique);
-        }
+        fileSet = new LogFileSet(pattern, count, indexed, compress);
+        fileSet.lock();
 
         // Create the initial log file.
         if (append) {
-            open(files[0], true);
+            open(fileSet.file(0), true);
         } else {
             rotate();
         }
+        if (fileSet.isTimed()) {
+            scheduleRollover(System.currentTimeMillis());
+        }
 
         // Did we detect any exceptions during initialization?
         Exception ex = em.lastException;
@@ -430,117 +372,24 @@ public class FileHandler extends StreamHandler {
     }
 
     /**
-     * Generate a file based on a user-supplied pattern, generation number,
-     * and an integer uniqueness suffix
-     * @param pattern the pattern for naming the output file
-     * @param generation the generation number to distinguish rotated logs
-     * @param unique a unique number to resolve conflicts
-     * @return the generated File
-     * @throws IOException
-     */
-    private File generate(String pattern, int generation, int unique)
-            throws IOException {
-        File file = null;
-        String word = "";
-        int ix = 0;
-        boolean sawg = false;
-        boolean sawu = false;
-        while (ix < pattern.length()) {
-            char ch = pattern.charAt(ix);
-            ix++;
-            char ch2 = 0;
-            if (ix < pattern.length()) {
-                ch2 = Character.toLowerCase(pattern.charAt(ix));
-            }
-            if (ch == '/') {
-                if (file == null) {
-                    file = new File(word);
-                } else {
-                    file = new File(file, word);
-                }
-                word = "";
-                continue;
-            } else  if (ch == '%') {
-                if (ch2 == 't') {
-                    String tmpDir = System.getProperty("java.io.tmpdir");
-                    if (tmpDir == null) {
-                        tmpDir = System.getProperty("user.home");
-                    }
-                    file = new File(tmpDir);
-                    ix++;
-                    word = "";
-                    continue;
-                } else if (ch2 == 'h') {
-                    file = new File(System.getProperty("user.home"));
-                    if (isSetUID()) {
-                        // Ok, we are in a set UID program.  For safety's sake
-                        // we disallow attempts to open files relative to %h.
-                        throw new IOException("can't use %h in set UID program");
-                    }
-                    ix++;
-                    word = "";
-                    continue;
-                } else if (ch2 == 'g') {
-                    word = word + generation;
-                    sawg = true;
-                    ix++;
-                    continue;
-                } else if (ch2 == 'u') {
-                    word = word + unique;
-                    sawu = true;
-                    ix++;
-                    continue;
-                } else if (ch2 == '%') {
-                    word = word + "%";
-                    ix++;
-                    continue;
-                }
-            }
-            word = word + ch;
-        }
-        if (count > 1 && !sawg) {
-            word = word + "." + generation;
-        }
-        if (unique > 0 && !sawu) {
-            word = word + "." + unique;
-        }
-        if (word.length() > 0) {
-            if (file == null) {
-                file = new File(word);
-            } else {
-                file = new File(file, word);
-            }
-        }
-        return file;
-    }
-
-    /**
-     * Rotate the set of output files
+     * Rotate the set of output files.  This runs on the scheduler thread;
+     * holding the lock keeps records logged meanwhile out of the old file.
      */
     private synchronized void rotate() {
-        Level oldLevel = getLevel();
-        setLevel(Level.OFF);
-
-        super.close();
-        for (int i = count-2; i >= 0; i--) {
-            File f1 = files[i];
-            File f2 = files[i+1];
-            if (f1.exists()) {
-                if (f2.exists()) {
-                    f2.delete();
-                }
-                f1.renameTo(f2);
-            }
+        rotating = false;
+        if (closed) {
+            return;
         }
+        super.close();
+        fileSet.shift();
         try {
-            open(files[0], false);
+            open(fileSet.file(0), false);
         } catch (IOException ix) {
             // We don't want to throw an exception here, but we
             // report the exception to any registered ErrorManager.
             reportError(null, ix, ErrorManager.OPEN_FAILURE);
 
         }
-        setLevel(oldLevel);
     }
 
     /**
@@ -557,18 +406,157 @@ public class FileHandler extends StreamHandler {
         super.publish(record);
         flush();
         if (limit > 0 && meter.written >= limit) {
-            // We performed access checks in the "init" method to make sure
-            // we are only initialized from trusted code.  So we assume
-            // it is OK to write the target files, even if we are
-            // currently being called from untrusted code.
-            // So it is safe to raise privilege here.
-            AccessController.doPrivileged(new PrivilegedAction<Object>() {
-               // @Override
-                public Object run() {
-                    rotate();
-                    return null;
+            if (!rotating) {
+                // Rotate on the rotation thread, so that the logging thread
+                // does not wait for the files to be closed, renamed and opened.
+                // Records keep going to the current file until then.
+                rotating = true;
+                LogFileSet.scheduler().execute(new Runnable() {
+                    //@Override
+                    public void run() {
+                        rotatePrivileged(true);
+                    }
+                });
+            } else if (meter.written - limit >= limit) {
+                // The rotation thread is falling behind.  Don't let the
+                // file grow without bound.
+                rotatePrivileged(false);
+            }
+        }
+    }
+
+    private void rotatePrivileged(final boolean queued) {
+        // We performed access checks in the "init" method to make sure
+        // we are only initialized from trusted code.  So we assume
+        // it is OK to write the target files, even if we are
+        // currently being called from untrusted code.
+        // So it is safe to raise privilege here.
+        AccessController.doPrivileged(new PrivilegedAction<Object>() {
+           // @Override
+            public Object run() {
+                synchronized (FileHandler.this) {
+                    // A queued rotation may have been done already.
+                    if (!queued || rotating) {
+                        rotate();
+                    }
                 }
-            });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Schedule the rollover to the period following the one holding
+     * the given time.  The file of the new period is opened a little in
+     * advance, so that the rollover itself only swaps streams.
+     */
+    private synchronized void scheduleRollover(long from) {
+        final long at = fileSet.nextPeriod(from);
+        long delay = at - PREOPEN_MILLIS - System.currentTimeMillis();
+        rollover = LogFileSet.scheduler().schedule(new Runnable() {
+            //@Override
+            public void run() {
+                AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                   // @Override
+                    public Object run() {
+                        prepareRollover(at);
+                        return null;
+                    }
+                });
+            }
+        }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    // Open the file of the period starting at the given time, and
+    // schedule the rollover to it.
+    private void prepareRollover(final long at) {
+        File file;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                file = fileSet.next(at);
+            } catch (IOException ix) {
+                reportError(null, ix, ErrorManager.OPEN_FAILURE);
+                file = null;
+            }
+        }
+        // Open the file without holding the lock, so that logging
+        // goes on meanwhile.
+        MeteredStream stream = null;
+        if (file != null) {
+            try {
+                stream = openStream(file, true);
+            } catch (IOException ix) {
+                // The rollover will try again.
+            }
+        }
+        synchronized (this) {
+            nextFile = file;
+            nextMeter = stream;
+            if (closed) {
+                closeNext();
+                return;
+            }
+            long delay = at - System.currentTimeMillis();
+            rollover = LogFileSet.scheduler().schedule(new Runnable() {
+                //@Override
+                public void run() {
+                    AccessController.doPrivileged(new PrivilegedAction<Object>() {
+                       // @Override
+                        public Object run() {
+                            rollover(at);
+                            return null;
+                        }
+                    });
+                }
+            }, Math.max(0, delay), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Switch to the period starting at the given time.
+    private synchronized void rollover(long at) {
+        if (closed) {
+            return;
+        }
+        try {
+            // Close the last file first, so that it may be compressed.
+            super.close();
+            fileSet.roll(at);
+            File file = fileSet.file(0);
+            if (nextMeter != null && file.equals(nextFile)) {
+                meter = nextMeter;
+                nextMeter = null;
+            } else {
+                // A rotation got in the way.
+                closeNext();
+                meter = openStream(file, true);
+            }
+            setOutputStream(meter);
+        } catch (IOException ix) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ix, ErrorManager.OPEN_FAILURE);
+        }
+        nextFile = null;
+        // If the rotation thread was held up for a whole period, the
+        // next rollover is due at once.
+        scheduleRollover(Math.max(at, System.currentTimeMillis()));
+    }
+
+    // Close the file opened in advance, and remove it if it is empty.
+    private void closeNext() {
+        if (nextMeter != null) {
+            try {
+                nextMeter.close();
+            } catch (IOException ex) {
+                // Never written to.  Punt.
+            }
+            if (nextFile.length() == 0) {
+                nextFile.delete();
+            }
+            nextMeter = null;
         }
     }
 
@@ -581,22 +569,16 @@ public class FileHandler extends StreamHandler {
     @Override
     public synchronized void close() throws SecurityException {
         super.close();
-        // Unlock any lock file.
-        if (lockFileName == null) {
-            return;
+        closed = true;
+        if (rollover != null) {
+            rollover.cancel(false);
+            rollover = null;
         }
-        try {
-            // Close the lock file channel (which also will free any locks)
-            lockFileChannel.close();
-        } catch (Exception ex) {
-            // Problems closing the stream.  Punt.
-        }
-        synchronized(locks) {
-            locks.remove(lockFileName);
+        closeNext();
+        // Unlock any lock file.
+        if (fileSet != null) {
+            fileSet.release();
         }
-        new File(lockFileName).delete();
-        lockFileName = null;
-        lockFileChannel = null;
     }
 
     private static class InitializationErrorManager extends ErrorManager {
@@ -610,6 +592,6 @@ public class FileHandler extends StreamHandler {
     /**
      * check if we are in a set UID program.
      */
-    private static native boolean isSetUID();
+    static native boolean isSetUID();
 }
 
@@ -61,8 +61,16 @@ public abstract class Formatter {
      * formatting.
      * <ul>
      * <li>If there are no parameters, no formatter is used.
-     * <li>Otherwise, if the string contains "{0" then
-     *     java.text.MessageFormat  is used to format the string.
+     * <li>Otherwise, if the string contains "{}" or one of "{0" to
+     *     "{3", its <tt>{}</tt> and <tt>{n}</tt> placeholders are
+     *     replaced by the parameters in a single pass, rendering them
+     *     as java.text.MessageFormat would.  Note that formats using
+     *     <tt>{}</tt>, which MessageFormat rejects, used to be left as
+     *     they were.
+     * <li>If the format string uses quotes or format types, or a
+     *     parameter is a Date, and the string contains one of "{0" to
+     *     "{3", then java.text.MessageFormat is used to format the
+     *     string.  Parsed patterns are kept in a {@link MessageFormatCache}.
      * <li>Otherwise no formatting is performed.
      * </ul>
      * <p>
@@ -70,7 +78,7 @@ public abstract class Formatter {
      * @param  record  the log record containing the raw message
      * @return   a localized and formatted message
      */
-    public synchronized String formatMessage(LogRecord record) {
+    public String formatMessage(LogRecord record) {
         String format = record.getMessage();
         java.util.ResourceBundle catalog = record.getResourceBundle();
         if (catalog != null) {
@@ -83,10 +91,27 @@ public abstract class Formatter {
         }
         // Do the formatting.
         try {
-            Object parameters[] = record.getParameters();
-            if (parameters == null || parameters.length == 0) {
-                // No parameters.  Just return format string.
-                return format;
+            // Try the fast path first.  It returns null if the format
+            // needs the full java.text treatment.
+            Object parameters[] = null;
+            String result;
+            if (record.getInlineCount() > 0) {
+                // Parameters given one by one; the fast path takes them
+                // as they are, without boxing.
+                result = ParameterFormatter.format(format, record);
+            } else {
+                parameters = record.getParameters();
+                if (parameters == null || parameters.length == 0) {
+                    // No parameters.  Just return format string.
+                    return format;
+                }
+                result = ParameterFormatter.format(format, parameters);
+            }
+            if (result != null) {
+                return result;
+            }
+            if (parameters == null) {
+                parameters = record.getParameters();
             }
             // Is it a java.text style format?
             // Ideally we could match with
@@ -95,7 +120,7 @@ public abstract class Formatter {
             // 1 of the first 4 parameters
             if (format.indexOf("{0") >= 0 || format.indexOf("{1") >=0 ||
                         format.indexOf("{2") >=0|| format.indexOf("{3") >=0) {
-                return java.text.MessageFormat.format(format, parameters);
+                return MessageFormatCache.format(format, parameters);
             }
             return format;
 
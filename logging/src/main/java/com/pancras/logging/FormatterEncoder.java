@@ -0,0 +1,51 @@
+package com.pancras.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * An <tt>Encoder</tt> which formats each record with a <tt>Formatter</tt>
+ * and encodes the resulting string.
+ * <p>
+ * This lets any existing <tt>Formatter</tt> be used where an
+ * <tt>Encoder</tt> is expected.  It saves the copy made by a
+ * <tt>Writer</tt>, but not the <tt>String</tt> built by the formatter.
+ */
+public class FormatterEncoder extends Encoder {
+    private final Formatter formatter;
+
+    /**
+     * Create an encoder for the given formatter.
+     *
+     * @param formatter  the formatter to use
+     */
+    public FormatterEncoder(Formatter formatter) {
+        // Check for a null pointer:
+        formatter.getClass();
+        this.formatter = formatter;
+    }
+
+    /**
+     * Return the formatter used by this encoder.
+     *
+     * @return the formatter
+     */
+    public Formatter getFormatter() {
+        return formatter;
+    }
+
+    @Override
+    public ByteBuffer encode(LogRecord record, Charset charset, ByteBuffer buffer) {
+        return put(buffer, formatter.format(record), charset);
+    }
+
+    @Override
+    public String getHead(Handler h) {
+        return formatter.getHead(h);
+    }
+
+    @Override
+    public String getTail(Handler h) {
+        return formatter.getTail(h);
+    }
+}
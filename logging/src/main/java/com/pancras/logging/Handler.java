@@ -15,10 +15,15 @@ public abstract class Handler {
     // of the execution of a 'publish' call.
     private volatile Filter filter;
     private volatile Formatter formatter;
+    private volatile Encoder encoder;
     private volatile Level logLevel = Level.ALL;
     private volatile ErrorManager errorManager = new ErrorManager();
     private volatile String encoding;
 
+    // Counts the changes of level of any Handler, so that loggers know
+    // when to recompute the lowest level their handlers accept.
+    static volatile int levelEpoch;
+
     // Package private support for security checking.  When sealed
     // is true, we access check updates to the class.
     boolean sealed = true;
@@ -90,6 +95,32 @@ public abstract class Handler {
         return formatter;
     }
 
+    /**
+     * Set an <tt>Encoder</tt>.  If set, this <tt>Encoder</tt> is used
+     * instead of the <tt>Formatter</tt> by the <tt>Handlers</tt> which
+     * write bytes, such as <tt>StreamHandler</tt>.
+     * <p>
+     * Some <tt>Handlers</tt> may not use <tt>Encoders</tt>, in
+     * which case the <tt>Encoder</tt> will be remembered, but not used.
+     * <p>
+     * @param newEncoder the <tt>Encoder</tt> to use, or null to use
+     *                   the <tt>Formatter</tt>
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     */
+    public synchronized void setEncoder(Encoder newEncoder) throws SecurityException {
+        checkPermission();
+        encoder = newEncoder;
+    }
+
+    /**
+     * Return the <tt>Encoder</tt> for this <tt>Handler</tt>.
+     * @return the <tt>Encoder</tt> (may be null).
+     */
+    public Encoder getEncoder() {
+        return encoder;
+    }
+
     /**
      * Set the character encoding used by this <tt>Handler</tt>.
      * <p>
@@ -221,6 +252,9 @@ public abstract class Handler {
         }
         checkPermission();
         logLevel = newLevel;
+        synchronized (Handler.class) {
+            levelEpoch++;
+        }
     }
 
     /**
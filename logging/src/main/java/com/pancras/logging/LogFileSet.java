@@ -0,0 +1,873 @@
+package com.pancras.logging;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The set of files written by a file handler: the generations named
+ * by a pattern, and the <tt>.lck</tt> file which grants exclusive use
+ * of them.
+ * <p>
+ * This holds the file naming, locking and rotation logic shared by
+ * {@link FileHandler} and the other file based handlers, so that they
+ * all agree on which files belong to whom.
+ * <p>
+ * Files are rotated in one of two ways:
+ * <ul>
+ * <li> by renaming, the default: the current file is always generation 0,
+ *      and rotating renames every generation up by one; </li>
+ * <li> by index, when the handler's <tt>rotation</tt> property is
+ *      <tt>index</tt>: each new file takes the next of an ever increasing
+ *      index in place of the generation number, and rotating only deletes
+ *      the file which is now <tt>count</tt> files old.  The name and
+ *      index of the current file are kept in a <tt>.current</tt> file
+ *      next to the <tt>.lck</tt> file. </li>
+ * </ul>
+ * Rotating by index costs the same whatever the count.
+ * <p>
+ * A pattern may also hold date tokens, <tt>%d{format}</tt>, where the
+ * format is that of <tt>SimpleDateFormat</tt> (<tt>%d</tt> alone stands
+ * for <tt>%d{yyyy-MM-dd}</tt>).  The files are then named after the
+ * period of time they cover, and a new period, whose length is that of
+ * the finest field in the formats, starts a new file.
+ * <p>
+ * When the handler's <tt>compress</tt> property is true, each file is
+ * compressed with gzip once it has been rotated out, on a background
+ * thread of low priority.  The compressed file takes the name of the
+ * file with <tt>.gz</tt> added, and moves through the generations in
+ * its place.
+ */
+final class LogFileSet {
+    private static final int MAX_LOCKS = 100;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd";
+    // The lock files held in this VM, by any handler.
+    private static final Set<String> locks = new HashSet<String>();
+    // The file sets locked in this VM, guarded by locks.
+    private static final Set<LogFileSet> sets = new HashSet<LogFileSet>();
+    private static final String GZ = ".gz";
+    // The thread rotating files in the background, shared by all handlers.
+    private static ScheduledExecutorService scheduler;
+    // The thread compressing rotated files, shared by all handlers.
+    private static ExecutorService compressor;
+
+    private final String pattern;
+    private final int count;
+    private final boolean indexed;
+    private final boolean compress;
+    // The compressions queued or running, guarded by this.
+    private final List<Compression> pending = new ArrayList<Compression>();
+    private int unique;
+    private String lockFileName;
+    private FileChannel lockFileChannel;
+    // The files by generation; or when rotating by index, the
+    // last count files, with file i at i % count.
+    private File files[];
+    // The index of the current file, when rotating by index.
+    private long index;
+    private Path manifest;
+    // The Calendar field of the finest date token in the pattern,
+    // or -1 if there are none.
+    private final int period;
+    // The time at which the current period started.
+    private long time;
+
+    /**
+     * Create a file set, rotated by index or by renaming.  No files are
+     * touched until {@link #lock}.
+     *
+     * @param pattern  the pattern for naming the output files
+     * @param count    the number of files to use
+     * @param indexed  true to rotate by index
+     * @param compress true to compress the files rotated out
+     */
+    LogFileSet(String pattern, int count, boolean indexed, boolean compress) {
+        if (count < 1) {
+           throw new IllegalArgumentException("file count = " + count);
+        }
+        this.pattern = pattern;
+        this.count = count;
+        this.indexed = indexed;
+        this.compress = compress;
+        this.period = period(pattern);
+        this.time = (period < 0) ? 0 : start(System.currentTimeMillis());
+    }
+
+    // Find the finest field of the date tokens in a pattern.
+    private static int period(String pattern) {
+        int period = -1;
+        int ix = pattern.indexOf("%d");
+        while (ix >= 0) {
+            if (!isToken(pattern, ix)) {
+                // "%%d" is a literal "%d".
+                ix = pattern.indexOf("%d", ix + 2);
+                continue;
+            }
+            String format = dateFormat(pattern, ix);
+            boolean quoted = false;
+            for (int i = 0; i < format.length(); i++) {
+                char ch = format.charAt(i);
+                if (ch == '\'') {
+                    quoted = !quoted;
+                } else if (!quoted) {
+                    int field = field(ch);
+                    if (field >= 0 && (period < 0 || finer(field, period))) {
+                        period = field;
+                    }
+                }
+            }
+            ix = pattern.indexOf("%d", ix + 2);
+        }
+        return period;
+    }
+
+    // Tell if the '%' at ix starts a token, rather than ending "%%".
+    private static boolean isToken(String pattern, int ix) {
+        int n = 0;
+        while (ix >= 0 && pattern.charAt(ix) == '%') {
+            n++;
+            ix--;
+        }
+        return n % 2 == 1;
+    }
+
+    // The date format of the token at ix.
+    private static String dateFormat(String pattern, int ix) {
+        int open = ix + 2;
+        if (open < pattern.length() && pattern.charAt(open) == '{') {
+            int close = pattern.indexOf('}', open);
+            if (close > 0) {
+                return pattern.substring(open + 1, close);
+            }
+        }
+        return DEFAULT_DATE_FORMAT;
+    }
+
+    // The Calendar field for a SimpleDateFormat letter, or -1.
+    private static int field(char ch) {
+        switch (ch) {
+            case 'y': case 'Y':
+                return Calendar.YEAR;
+            case 'M':
+                return Calendar.MONTH;
+            case 'w': case 'W':
+                return Calendar.WEEK_OF_YEAR;
+            case 'd': case 'D': case 'E': case 'F': case 'u':
+                return Calendar.DAY_OF_MONTH;
+            case 'H': case 'k': case 'K': case 'h':
+                return Calendar.HOUR_OF_DAY;
+            case 'm':
+                return Calendar.MINUTE;
+            case 's':
+                return Calendar.SECOND;
+            default:
+                return -1;
+        }
+    }
+
+    private static boolean finer(int field, int than) {
+        return rank(field) > rank(than);
+    }
+
+    private static int rank(int field) {
+        switch (field) {
+            case Calendar.YEAR: return 0;
+            case Calendar.MONTH: return 1;
+            case Calendar.WEEK_OF_YEAR: return 2;
+            case Calendar.DAY_OF_MONTH: return 3;
+            case Calendar.HOUR_OF_DAY: return 4;
+            case Calendar.MINUTE: return 5;
+            default: return 6;
+        }
+    }
+
+    // The start of the period holding the given time.
+    private long start(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(millis);
+        // Clear every field finer than the period.
+        int rank = rank(period);
+        if (rank < rank(Calendar.MONTH)) {
+            c.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+        if (rank < rank(Calendar.WEEK_OF_YEAR)) {
+            c.set(Calendar.DAY_OF_MONTH, 1);
+        } else if (rank == rank(Calendar.WEEK_OF_YEAR)) {
+            c.set(Calendar.DAY_OF_WEEK, c.getFirstDayOfWeek());
+        }
+        if (rank < rank(Calendar.HOUR_OF_DAY)) {
+            c.set(Calendar.HOUR_OF_DAY, 0);
+        }
+        if (rank < rank(Calendar.MINUTE)) {
+            c.set(Calendar.MINUTE, 0);
+        }
+        if (rank < rank(Calendar.SECOND)) {
+            c.set(Calendar.SECOND, 0);
+        }
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Tell if the files are named after periods of time.
+     */
+    boolean isTimed() {
+        return period >= 0;
+    }
+
+    /**
+     * Return the time at which the next period starts, after the one
+     * holding the given time.
+     */
+    long nextPeriod(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(start(millis));
+        c.add(period, 1);
+        return c.getTimeInMillis();
+    }
+
+    /**
+     * Return the shared daemon thread on which handlers rotate their
+     * files in the background.
+     */
+    static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                //@Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Log file rotation");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+
+    /**
+     * Tell if a handler's <tt>rotation</tt> property asks for rotating by
+     * index.
+     */
+    static boolean isIndexed(LogManager manager, String cname) {
+        return "index".equalsIgnoreCase(manager.getStringProperty(cname + ".rotation", "rename"));
+    }
+
+    /**
+     * Return the shared thread on which rotated files are compressed.
+     * It runs at the lowest priority, so as to leave the processor to
+     * the threads which log.
+     */
+    private static synchronized ExecutorService compressor() {
+        if (compressor == null) {
+            compressor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                //@Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Log file compression");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return compressor;
+    }
+
+    /**
+     * Create or reuse a lock file, and generate the names of the files.
+     *
+     * @throws IOException if no lock file could be obtained
+     */
+    void lock() throws IOException {
+        // Create a lock file.  This grants us exclusive access
+        // to our set of output files, as long as we are alive.
+        unique = -1;
+        for (;;) {
+            unique++;
+            if (unique > MAX_LOCKS) {
+                throw new IOException("Couldn't get lock for " + pattern);
+            }
+            // Generate a lock file name from the "unique" int.
+            lockFileName = generate(0, unique, -1).toString() + ".lck";
+            // Now try to lock that filename.
+            // Because some systems (e.g., Solaris) can only do file locks
+            // between processes (and not within a process), we first check
+            // if we ourself already have the file locked.
+            synchronized(locks) {
+                if (locks.contains(lockFileName)) {
+                    // We already own this lock, for a different handler
+                    // object.  Try again.
+                    continue;
+                }
+
+                final Path lockFilePath = Paths.get(lockFileName);
+                FileChannel channel = null;
+                int retries = -1;
+                boolean fileCreated = false;
+                while (channel == null && retries++ < 1) {
+                    try {
+                        channel = FileChannel.open(lockFilePath,
+                                CREATE_NEW, WRITE);
+                        fileCreated = true;
+                    } catch (FileAlreadyExistsException ix) {
+                        // This may be a zombie file left over by a previous
+                        // execution. Reuse it - but only if we can actually
+                        // write to its directory.
+                        // Note that this is a situation that may happen,
+                        // but not too frequently.
+                        if (Files.isRegularFile(lockFilePath, LinkOption.NOFOLLOW_LINKS)
+                            && isParentWritable(lockFilePath)) {
+                            try {
+                                channel = FileChannel.open(lockFilePath,
+                                    WRITE, APPEND);
+                            } catch (NoSuchFileException x) {
+                                // Race condition - retry once, and if that
+                                // fails again just try the next name in
+                                // the sequence.
+                                continue;
+                            } catch(IOException x) {
+                                // the file may not be writable for us.
+                                // try the next name in the sequence
+                                break;
+                            }
+                        } else {
+                            // at this point channel should still be null.
+                            // break and try the next name in the sequence.
+                            break;
+                        }
+                    }
+                }
+
+                if (channel == null) continue; // try the next name;
+                lockFileChannel = channel;
+
+                boolean available;
+                try {
+                    available = lockFileChannel.tryLock() != null;
+                    // We got the lock OK.
+                    // At this point we could call File.deleteOnExit().
+                    // However, this could have undesirable side effects
+                    // as indicated by JDK-4872014. So we will instead
+                    // rely on the fact that close() will remove the lock
+                    // file and that whoever is creating FileHandlers should
+                    // be responsible for closing them.
+                } catch (IOException ix) {
+                    // We got an IOException while trying to get the lock.
+                    // This normally indicates that locking is not supported
+                    // on the target directory.  We have to proceed without
+                    // getting a lock.   Drop through, but only if we did
+                    // create the file...
+                    available = fileCreated;
+                } catch (OverlappingFileLockException x) {
+                    // someone already locked this file in this VM, through
+                    // some other channel - that is - using something else
+                    // than new FileHandler(...);
+                    // continue searching for an available lock.
+                    available = false;
+                }
+                if (available) {
+                    // We got the lock.  Remember it.
+                    locks.add(lockFileName);
+                    sets.add(this);
+                    break;
+                }
+
+                // We failed to get the lock.  Try next file.
+                lockFileChannel.close();
+            }
+        }
+
+        files = new File[count];
+        if (indexed) {
+            manifest = Paths.get(generate(0, unique, -1).toString() + ".current");
+            index = readIndex();
+            // Without date tokens this finds the files of the last run,
+            // and with them those of the last run in the same period.
+            for (long i = Math.max(0, index - count + 1); i <= index; i++) {
+                files[slot(i)] = generate(i, unique);
+            }
+            writeManifest();
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            files[i] = generate(i, unique);
+        }
+    }
+
+    // Read the index of the current file from the manifest, or zero if
+    // there is none.
+    private long readIndex() {
+        try {
+            List<String> lines = Files.readAllLines(manifest, UTF_8);
+            if (lines.size() > 1) {
+                return Math.max(0, Long.parseLong(lines.get(1).trim()));
+            }
+        } catch (NoSuchFileException ex) {
+            // A new file set.
+        } catch (Exception ex) {
+            // Unreadable - start again from zero.
+        }
+        return 0;
+    }
+
+    // Point the manifest to the current file: its name on the first
+    // line, so that it can be read by tools, and its index on the second.
+    // It is replaced atomically where possible, so that readers never
+    // see it half written.
+    private void writeManifest() {
+        String text = file(0).getPath() + "\n" + index + "\n";
+        Path tmp = Paths.get(manifest.toString() + ".tmp");
+        try {
+            Files.write(tmp, text.getBytes(UTF_8));
+            try {
+                Files.move(tmp, manifest, ATOMIC_MOVE, REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, manifest, REPLACE_EXISTING);
+            }
+        } catch (IOException ex) {
+            // The manifest is only a convenience for readers of the
+            // log, so this does not stop logging.
+        }
+    }
+
+    /**
+     * Return the file of the given generation.  Generation 0 is the one
+     * currently written.
+     */
+    File file(int generation) {
+        if (indexed) {
+            return (generation <= index && generation < count) ? files[slot(index - generation)] : null;
+        }
+        return files[generation];
+    }
+
+    private int slot(long index) {
+        return (int) (index % count);
+    }
+
+    /**
+     * Return the file which will be current once the period starting at
+     * the given time has begun, so that it may be opened in advance.
+     */
+    File next(long millis) throws IOException {
+        return generate(indexed ? index + 1 : 0, unique, millis);
+    }
+
+    /**
+     * Start the period beginning at the given time.  The files of the
+     * new period take over from those of the last, which are left in
+     * place.  When rotating by index, this also shifts to the next index.
+     */
+    synchronized void roll(long millis) throws IOException {
+        time = millis;
+        if (indexed) {
+            shift();
+            return;
+        }
+        File last = files[0];
+        for (int i = 0; i < count; i++) {
+            files[i] = generate(i, unique);
+        }
+        compress(last);
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Shift every generation up by one, dropping the oldest, so that
+     * generation 0 can be created afresh.
+     * <p>
+     * When rotating by index, this moves on to the next index and deletes
+     * the one file which falls out of the set, so no file is renamed.
+     * <p>
+     * The file which was generation 0 is then compressed, if asked for;
+     * the caller must have closed it.
+     */
+    synchronized void shift() {
+        if (indexed) {
+            index++;
+            File oldest = files[slot(index)];
+            if (oldest != null) {
+                delete(oldest);
+            }
+            try {
+                files[slot(index)] = generate(index, unique);
+            } catch (IOException ex) {
+                // The same pattern already generated the current file.
+                throw new IllegalStateException(ex);
+            }
+            writeManifest();
+            compress(file(1));
+            return;
+        }
+        for (int i = count-2; i >= 0; i--) {
+            File f1 = files[i];
+            File f2 = files[i+1];
+            File g1 = gz(f1);
+            if (f1.exists() || g1.exists()) {
+                delete(f2);
+                f1.renameTo(f2);
+                g1.renameTo(gz(f2));
+                moved(f1, f2);
+            }
+        }
+        if (count > 1) {
+            compress(files[1]);
+        }
+    }
+
+    private static File gz(File file) {
+        return new File(file.getPath() + GZ);
+    }
+
+    // Delete a file, compressed or not.
+    private void delete(File file) {
+        file.delete();
+        gz(file).delete();
+        moved(file, null);
+    }
+
+    // Tell the pending compressions that a file was renamed, or
+    // deleted if "to" is null.
+    private void moved(File from, File to) {
+        for (Compression c : pending) {
+            if (from.equals(c.source)) {
+                c.source = to;
+            }
+        }
+    }
+
+    // Queue the compression of a file which has been rotated out.
+    private void compress(File file) {
+        if (!compress || file == null || !file.exists()) {
+            return;
+        }
+        Compression c = new Compression(file);
+        pending.add(c);
+        compressor().execute(c);
+    }
+
+    /**
+     * The compression of a rotated file.  The file is compressed into a
+     * temporary file, which then replaces it, under the name the file has
+     * by then.
+     */
+    private final class Compression implements Runnable {
+        // The file to compress, or null if it has been deleted;
+        // guarded by the file set.
+        File source;
+
+        Compression(File source) {
+            this.source = source;
+        }
+
+        //@Override
+        public void run() {
+            File file;
+            synchronized (LogFileSet.this) {
+                file = source;
+                if (file == null) {
+                    pending.remove(this);
+                    return;
+                }
+            }
+            File tmp = new File(file.getPath() + GZ + ".tmp");
+            boolean done = false;
+            try {
+                gzip(file, tmp);
+                // Keep the time the file was last written, for the sake
+                // of retention by age.
+                tmp.setLastModified(file.lastModified());
+                done = true;
+            } catch (IOException ex) {
+                // Leave the file as it is.
+            }
+            synchronized (LogFileSet.this) {
+                pending.remove(this);
+                if (done && source != null) {
+                    done = tmp.renameTo(gz(source)) && source.delete();
+                }
+            }
+            if (!done) {
+                tmp.delete();
+            }
+        }
+    }
+
+    // Tell if a file, or the file it is the compressed form of, belongs
+    // to this set; called holding the lock of this set.
+    private boolean owns(File file) {
+        String name = file.getAbsolutePath();
+        File plain = new File(name.endsWith(GZ) ? name.substring(0, name.length() - GZ.length()) : name);
+        for (File f : files) {
+            if (f != null && plain.equals(f.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        for (Compression c : pending) {
+            if (c.source != null && plain.equals(c.source.getAbsoluteFile())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Delete a log file on behalf of a retention policy, unless some
+     * handler of this VM is writing it.  The files of a locked set are
+     * deleted holding its lock, so as not to race with its rotation.
+     *
+     * @return true if the file was deleted
+     */
+    static boolean deleteFile(File file) {
+        synchronized (locks) {
+            for (LogFileSet set : sets) {
+                synchronized (set) {
+                    if (set.owns(file)) {
+                        if (file.getAbsoluteFile().equals(set.file(0).getAbsoluteFile())) {
+                            return false;
+                        }
+                        boolean deleted = file.delete();
+                        set.moved(file, null);
+                        return deleted;
+                    }
+                }
+            }
+        }
+        return file.delete();
+    }
+
+    /**
+     * Compress a log file with gzip on behalf of a retention policy,
+     * unless it belongs to a file set locked in this VM, which compresses
+     * its own files if asked to.  The file is left alone if it changes
+     * meanwhile.
+     *
+     * @return the compressed file, or null if it was not compressed
+     */
+    static File compressFile(File file) {
+        if (isOwned(file)) {
+            return null;
+        }
+        long length = file.length();
+        long modified = file.lastModified();
+        File tmp = new File(file.getPath() + GZ + ".tmp");
+        File gz = gz(file);
+        try {
+            gzip(file, tmp);
+            tmp.setLastModified(modified);
+            if (!isOwned(file) && file.length() == length && file.lastModified() == modified
+                    && tmp.renameTo(gz)) {
+                file.delete();
+                return gz;
+            }
+        } catch (IOException ex) {
+            // Leave the file as it is.
+        }
+        tmp.delete();
+        return null;
+    }
+
+    private static boolean isOwned(File file) {
+        synchronized (locks) {
+            for (LogFileSet set : sets) {
+                synchronized (set) {
+                    if (set.owns(file)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void gzip(File from, File to) throws IOException {
+        byte buff[] = new byte[64 * 1024];
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new GZIPOutputStream(new FileOutputStream(to), buff.length);
+            try {
+                int n;
+                while ((n = in.read(buff)) > 0) {
+                    out.write(buff, 0, n);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Unlock and delete the lock file.
+     */
+    void release() {
+        if (lockFileName == null) {
+            return;
+        }
+        try {
+            // Close the lock file channel (which also will free any locks)
+            lockFileChannel.close();
+        } catch (Exception ex) {
+            // Problems closing the stream.  Punt.
+        }
+        synchronized(locks) {
+            locks.remove(lockFileName);
+            sets.remove(this);
+        }
+        new File(lockFileName).delete();
+        lockFileName = null;
+        lockFileChannel = null;
+    }
+
+    private boolean isParentWritable(Path path) {
+        Path parent = path.getParent();
+        if (parent == null) {
+            parent = path.toAbsolutePath().getParent();
+        }
+        return parent != null && Files.isWritable(parent);
+    }
+
+    /**
+     * Generate a file based on a user-supplied pattern, generation number,
+     * and an integer uniqueness suffix
+     * @param generation the generation number to distinguish rotated logs,
+     *                   or the index of the file when rotating by index
+     * @param unique a unique number to resolve conflicts
+     * @return the generated File
+     * @throws IOException
+     */
+    File generate(long generation, int unique) throws IOException {
+        return generate(generation, unique, time);
+    }
+
+    // Generate a file for the period starting at the given time, or with
+    // the date tokens left out if it is negative, for the names which
+    // must not change from one period to the next.
+    private File generate(long generation, int unique, long millis)
+            throws IOException {
+        File file = null;
+        String word = "";
+        int ix = 0;
+        boolean sawg = false;
+        boolean sawu = false;
+        while (ix < pattern.length()) {
+            char ch = pattern.charAt(ix);
+            ix++;
+            char ch2 = 0;
+            if (ix < pattern.length()) {
+                ch2 = Character.toLowerCase(pattern.charAt(ix));
+            }
+            if (ch == '/') {
+                if (file == null) {
+                    file = new File(word);
+                } else {
+                    file = new File(file, word);
+                }
+                word = "";
+                continue;
+            } else  if (ch == '%') {
+                if (ch2 == 't') {
+                    String tmpDir = System.getProperty("java.io.tmpdir");
+                    if (tmpDir == null) {
+                        tmpDir = System.getProperty("user.home");
+                    }
+                    file = new File(tmpDir);
+                    ix++;
+                    word = "";
+                    continue;
+                } else if (ch2 == 'h') {
+                    file = new File(System.getProperty("user.home"));
+                    if (FileHandler.isSetUID()) {
+                        // Ok, we are in a set UID program.  For safety's sake
+                        // we disallow attempts to open files relative to %h.
+                        throw new IOException("can't use %h in set UID program");
+                    }
+                    ix++;
+                    word = "";
+                    continue;
+                } else if (ch2 == 'g') {
+                    word = word + generation;
+                    sawg = true;
+                    ix++;
+                    continue;
+                } else if (ch2 == 'u') {
+                    word = word + unique;
+                    sawu = true;
+                    ix++;
+                    continue;
+                } else if (ch2 == '%') {
+                    word = word + "%";
+                    ix++;
+                    continue;
+                } else if (ch2 == 'd') {
+                    String format = dateFormat(pattern, ix - 1);
+                    if (millis >= 0) {
+                        word = word + new SimpleDateFormat(format).format(new Date(millis));
+                    }
+                    ix++;
+                    if (ix < pattern.length() && pattern.charAt(ix) == '{'
+                            && pattern.indexOf('}', ix) > 0) {
+                        ix = pattern.indexOf('}', ix) + 1;
+                    }
+                    continue;
+                }
+            }
+            word = word + ch;
+        }
+        if ((count > 1 || indexed) && !sawg) {
+            word = word + "." + generation;
+        }
+        if (unique > 0 && !sawu) {
+            word = word + "." + unique;
+        }
+        if (word.length() > 0) {
+            if (file == null) {
+                file = new File(word);
+            } else {
+                file = new File(file, word);
+            }
+        }
+        return file;
+    }
+}
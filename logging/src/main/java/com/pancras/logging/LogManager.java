@@ -16,15 +16,15 @@ import java.security.Permission;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import sun.misc.JavaAWTAccess;
 import sun.misc.SharedSecrets;
@@ -59,8 +59,12 @@ public class LogManager {
     // initialization has been done)
     private volatile boolean readPrimordialConfiguration;
     // Have we initialized global (root) handlers yet?
-    // This gets set to false in readConfiguration
-    private boolean initializedGlobalHandlers = true;
+    // This gets set to false in readConfiguration, and only set to true
+    // again once the handlers are in place, so that it can be read
+    // without taking the lock.
+    private volatile boolean initializedGlobalHandlers = true;
+    // True while the global handlers are being loaded.  Guarded by this.
+    private boolean initializingGlobalHandlers;
     // True if JVM death is imminent and the exit hook has been called.
     private boolean deathImminent;
 
@@ -510,7 +514,11 @@ public class LogManager {
     // added in the user context.
     class LoggerContext {
         // Table of named Loggers that maps names to Loggers.
-        private final Hashtable<String,LoggerWeakRef> namedLoggers = new Hashtable<String,LoggerWeakRef>();
+        // Lookups take no lock.  Loggers are added under the lock on this
+        // context, and only once they are wired into the tree, so that a
+        // Logger found here always has its parent set.
+        private final ConcurrentHashMap<String,LoggerWeakRef> namedLoggers =
+                new ConcurrentHashMap<String,LoggerWeakRef>();
         // Tree of named Loggers
         private final LogNode root;
         private LoggerContext() {
@@ -573,7 +581,7 @@ public class LogManager {
         }
 
 
-        synchronized Logger findLogger(String name) {
+        Logger findLogger(String name) {
             // ensure that this context is properly initialized before
             // looking for loggers.
             ensureInitialized();
@@ -583,7 +591,7 @@ public class LogManager {
             }
             Logger logger = ref.get();
             if (logger == null) {
-                // Hashtable holds stale weak reference
+                // The table holds stale weak reference
                 // to a logger which has been GC-ed.
                 ref.dispose();
             }
@@ -683,7 +691,6 @@ public class LogManager {
             final LogManager owner = getOwner();
             logger.setLogManager(owner);
             ref = owner.new LoggerWeakRef(logger);
-            namedLoggers.put(name, ref);
 
             // Apply any initial level defined for the new logger, unless
             // the logger's level is already initialized
@@ -720,14 +727,16 @@ public class LogManager {
             node.walkAndSetParent(logger);
             // new LogNode is ready so tell the LoggerWeakRef about it
             ref.setNode(node);
+            // Only now may the logger be found.
+            namedLoggers.put(name, ref);
             return true;
         }
 
-        synchronized void removeLoggerRef(String name, LoggerWeakRef ref) {
+        void removeLoggerRef(String name, LoggerWeakRef ref) {
             namedLoggers.remove(name, ref);
         }
 
-        synchronized Enumeration<String> getLoggerNames() {
+        Enumeration<String> getLoggerNames() {
             // ensure that this context is properly initialized before
             // returning logger names.
             ensureInitialized();
@@ -775,25 +784,19 @@ public class LogManager {
                 return root;
             }
             LogNode node = root;
-            while (name.length() > 0) {
-                int ix = name.indexOf(".");
-                String head;
-                if (ix > 0) {
-                    head = name.substring(0, ix);
-                    name = name.substring(ix + 1);
-                } else {
-                    head = name;
-                    name = "";
-                }
-                if (node.children == null) {
-                    node.children = new HashMap<String,LogNode>();
-                }
-                LogNode child = node.children.get(head);
+            int start = 0;
+            int length = name.length();
+            while (start < length) {
+                // The name is looked up in place, a part at a time.
+                int ix = name.indexOf('.', start);
+                int end = (ix > start) ? ix : length;
+                LogNode child = node.child(name, start, end);
                 if (child == null) {
-                    child = new LogNode(node, this);
-                    node.children.put(head, child);
+                    child = new LogNode(node, this, name.substring(start, end));
+                    node.addChild(child);
                 }
                 node = child;
+                start = (ix > start) ? ix + 1 : length;
             }
             return node;
         }
@@ -939,9 +942,9 @@ public class LogManager {
             final LogNode n = node;
             if (n != null) {
                 // n.loggerRef can only be safely modified from within
-                // a lock on LoggerContext. removeLoggerRef is already
-                // synchronized on LoggerContext so calling
-                // n.context.removeLoggerRef from within this lock is safe.
+                // a lock on LoggerContext. removeLoggerRef takes no lock
+                // so calling n.context.removeLoggerRef from within this
+                // lock is safe.
                 synchronized (n.context) {
                     // if we have a LogNode, then we were a named Logger
                     // so clear namedLoggers weak ref to us
@@ -1320,6 +1323,15 @@ public class LogManager {
         // Set levels on any pre-existing loggers, based on the new properties.
         setLevelsOnExistingLoggers();
 
+        // LogRecord pooling, sequence numbers and the format cache are
+        // global, so they are configured by the global LogManager only.
+        if (this == manager) {
+            LogRecordPool.setEnabled(getBooleanProperty("com.pancras.logging.LogRecord.pooling", false));
+            SequenceAllocator.setBlockSize(getIntProperty("com.pancras.logging.LogRecord.sequenceBlock", 1));
+            MessageFormatCache.setMaxSize(getIntProperty("com.pancras.logging.Formatter.cacheSize",
+                    MessageFormatCache.DEFAULT_SIZE));
+        }
+
         // Notify any interested parties that our properties have changed.
         // We first take a copy of the listener map so that we aren't holding any
         // locks when calling the listeners.
@@ -1346,6 +1358,12 @@ public class LogManager {
         synchronized (this) {
             initializedGlobalHandlers = false;
         }
+        // Make the handler chains reach the root logger again, so that
+        // the global handlers get loaded.
+        Logger root = rootLogger;
+        if (root != null) {
+            root.clearHandlerChains();
+        }
     }
 
     /**
@@ -1384,6 +1402,40 @@ public class LogManager {
         }
     }
 
+    // Package private method to get a long property, such as a file
+    // size.  The value may end with one of the suffixes "k", "m", "g"
+    // or "t" (in either case) to multiply it by 1024, 1024^2, etc.
+    // If the property is not defined or cannot be parsed
+    // we return the given default value.
+    long getLongProperty(String name, long defaultValue) {
+        String val = getProperty(name);
+        if (val == null) {
+            return defaultValue;
+        }
+        val = val.trim();
+        int shift = 0;
+        if (val.length() > 1) {
+            switch (Character.toLowerCase(val.charAt(val.length() - 1))) {
+                case 'k': shift = 10; break;
+                case 'm': shift = 20; break;
+                case 'g': shift = 30; break;
+                case 't': shift = 40; break;
+            }
+            if (shift != 0) {
+                val = val.substring(0, val.length() - 1).trim();
+            }
+        }
+        try {
+            long value = Long.parseLong(val);
+            if (value > (Long.MAX_VALUE >> shift) || value < (Long.MIN_VALUE >> shift)) {
+                return defaultValue;
+            }
+            return value << shift;
+        } catch (Exception ex) {
+            return defaultValue;
+        }
+    }
+
     // Package private method to get a boolean property.
     // If the property is not defined or cannot be parsed
     // we return the given default value.
@@ -1454,23 +1506,54 @@ public class LogManager {
         return defaultValue;
     }
 
+    // Package private method to get an encoder property.
+    // We return an instance of the class named by the "name"
+    // property. If the property is not defined or has problems
+    // we return the defaultValue.
+    Encoder getEncoderProperty(String name, Encoder defaultValue) {
+        String val = getProperty(name);
+        try {
+            if (val != null) {
+                Class<?> clz = ClassLoader.getSystemClassLoader().loadClass(val);
+                return (Encoder) clz.newInstance();
+            }
+        } catch (Exception ex) {
+            // We got one of a variety of exceptions in creating the
+            // class or creating an instance.
+            // Drop through.
+        }
+        // We got an exception.  Return the defaultValue.
+        return defaultValue;
+    }
+
     // Private method to load the global handlers.
     // We do the real work lazily, when the global handlers
     // are first used.
-    private synchronized void initializeGlobalHandlers() {
+    // Once they are loaded, this only reads a volatile field.
+    private void initializeGlobalHandlers() {
         if (initializedGlobalHandlers) {
             return;
         }
-
-        initializedGlobalHandlers = true;
-
-        if (deathImminent) {
-            // Aaargh...
-            // The VM is shutting down and our exit hook has been called.
-            // Avoid allocating global handlers.
-            return;
+        synchronized (this) {
+            // Loading the handlers adds them to the root logger,
+            // which brings us back here.
+            if (initializedGlobalHandlers || initializingGlobalHandlers) {
+                return;
+            }
+            initializingGlobalHandlers = true;
+            try {
+                if (deathImminent) {
+                    // Aaargh...
+                    // The VM is shutting down and our exit hook has been called.
+                    // Avoid allocating global handlers.
+                    return;
+                }
+                loadLoggerHandlers(rootLogger, null, "handlers");
+            } finally {
+                initializingGlobalHandlers = false;
+                initializedGlobalHandlers = true;
+            }
         }
-        loadLoggerHandlers(rootLogger, null, "handlers");
     }
 
     private final Permission controlPermission = new LoggingPermission("control", null);
@@ -1496,15 +1579,116 @@ public class LogManager {
     }
 
     // Nested class to represent a node in our tree of named loggers.
+    //
+    // As there may be very many loggers, a node is kept small: it holds its
+    // part of the name, interned so that it is shared with the nodes of
+    // the same name, and its children in an array.  A few children are
+    // kept in order of addition; more are kept in an open addressing hash
+    // table, keyed by the hash code of their part of the name.
     private static class LogNode {
-        HashMap<String,LogNode> children;
+        // The most children kept in a plain array.
+        private static final int SMALL = 8;
+
+        final String part;
+        // The children; null if there are none.
+        LogNode children[];
+        int size;
         LoggerWeakRef loggerRef;
         LogNode parent;
         final LoggerContext context;
 
         LogNode(LogNode parent, LoggerContext context) {
+            this(parent, context, null);
+        }
+
+        LogNode(LogNode parent, LoggerContext context, String part) {
             this.parent = parent;
             this.context = context;
+            this.part = (part == null) ? null : part.intern();
+        }
+
+        // Tell if the part of the name of this node is name[start, end).
+        private boolean matches(String name, int start, int end) {
+            return part.length() == end - start && name.regionMatches(start, part, 0, end - start);
+        }
+
+        // The hash code of name[start, end), as String.hashCode would compute it.
+        private static int hash(String name, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            return h;
+        }
+
+        private static int index(int hash, int length) {
+            return (hash ^ (hash >>> 16)) & (length - 1);
+        }
+
+        // Find the child for name[start, end); null if there is none.
+        LogNode child(String name, int start, int end) {
+            LogNode nodes[] = children;
+            if (nodes == null) {
+                return null;
+            }
+            if (nodes.length <= SMALL) {
+                for (int i = 0; i < size; i++) {
+                    if (nodes[i].matches(name, start, end)) {
+                        return nodes[i];
+                    }
+                }
+                return null;
+            }
+            int h = hash(name, start, end);
+            for (int i = index(h, nodes.length); ; i = (i + 1) & (nodes.length - 1)) {
+                LogNode node = nodes[i];
+                if (node == null) {
+                    return null;
+                }
+                if (node.part.hashCode() == h && node.matches(name, start, end)) {
+                    return node;
+                }
+            }
+        }
+
+        // Add a new child.
+        void addChild(LogNode child) {
+            if (children == null) {
+                children = new LogNode[2];
+            } else if (children.length <= SMALL && size == children.length) {
+                if (size < SMALL) {
+                    children = Arrays.copyOf(children, size * 2);
+                } else {
+                    rehash(SMALL * 4);
+                }
+            } else if (children.length > SMALL && (size + 1) * 2 > children.length) {
+                // Keep the table at most half full.
+                rehash(children.length * 2);
+            }
+            if (children.length <= SMALL) {
+                children[size++] = child;
+            } else {
+                put(children, child);
+                size++;
+            }
+        }
+
+        private void rehash(int length) {
+            LogNode nodes[] = new LogNode[length];
+            for (LogNode node : children) {
+                if (node != null) {
+                    put(nodes, node);
+                }
+            }
+            children = nodes;
+        }
+
+        private static void put(LogNode nodes[], LogNode node) {
+            int i = index(node.part.hashCode(), nodes.length);
+            while (nodes[i] != null) {
+                i = (i + 1) & (nodes.length - 1);
+            }
+            nodes[i] = node;
         }
 
         // Recursive method to walk the tree below a node and set
@@ -1513,9 +1697,10 @@ public class LogManager {
             if (children == null) {
                 return;
             }
-            Iterator<LogNode> values = children.values().iterator();
-            while (values.hasNext()) {
-                LogNode node = values.next();
+            for (LogNode node : children) {
+                if (node == null) {
+                    continue;
+                }
                 LoggerWeakRef ref = node.loggerRef;
                 Logger logger = (ref == null) ? null : ref.get();
                 if (logger == null) {
@@ -9,15 +9,11 @@ import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
 
 import sun.misc.JavaLangAccess;
 import sun.misc.SharedSecrets;
 
 public class LogRecord implements java.io.Serializable {
-    private static final AtomicLong globalSequenceNumber
-        = new AtomicLong(0);
-
     /**
      * The default value of threadID will be the current thread's
      * thread id, for ease of correlation, unless it is greater than
@@ -84,8 +80,32 @@ public class LogRecord implements java.io.Serializable {
     private String resourceBundleName;
 
     private transient boolean needToInferCaller;
+    // The site the record was logged at, while its caller is to be
+    // inferred and remembered by the site.
+    private transient LogSite site;
     private transient Object parameters[];
+    // Up to four parameters set by the fixed arity Logger methods, kept
+    // here rather than in an Object[] until someone asks for one.  A
+    // single primitive parameter is kept in inlineBits, with its kind.
+    private transient int inlineCount;
+    private transient int inlineKind;
+    private transient Object inline0, inline1, inline2, inline3;
+    private transient long inlineBits;
+    // The inline parameters boxed into an array by getParameters, which
+    // leaves the inline ones in place for the formatters.
+    private transient Object boxedParameters[];
+
+    // The kinds of inline parameters.
+    static final int OBJECT = 0;
+    static final int INT = 1;
+    static final int LONG = 2;
+    static final int DOUBLE = 3;
+    static final int BOOLEAN = 4;
+    static final int CHAR = 5;
     private transient ResourceBundle resourceBundle;
+    // True while the record belongs to a LogRecordPool and may be
+    // recycled once the logging call that took it returns.
+    transient boolean pooled;
 
     /**
      * Returns the default value for a new LogRecord's threadID.
@@ -126,12 +146,65 @@ public class LogRecord implements java.io.Serializable {
         this.level = level;
         message = msg;
         // Assign a thread ID and a unique sequence number.
-        sequenceNumber = globalSequenceNumber.getAndIncrement();
+        sequenceNumber = SequenceAllocator.next();
         threadID = defaultThreadID();
         millis = System.currentTimeMillis();
         needToInferCaller = true;
    }
 
+    // Package private method used by LogRecordPool to make a recycled
+    // record look like one just created by the constructor.
+    void reset(Level level, String msg, int threadID) {
+        clear();
+        this.level = level;
+        message = msg;
+        sequenceNumber = SequenceAllocator.next();
+        this.threadID = threadID;
+        millis = System.currentTimeMillis();
+        needToInferCaller = true;
+    }
+
+    // Package private method to drop all object references held by
+    // the record, so a pooled record doesn't keep them reachable.
+    void clear() {
+        message = null;
+        sourceClassName = null;
+        sourceMethodName = null;
+        thrown = null;
+        loggerName = null;
+        resourceBundleName = null;
+        parameters = null;
+        clearInline();
+        resourceBundle = null;
+        site = null;
+    }
+
+    private void clearInline() {
+        boxedParameters = null;
+        inlineCount = 0;
+        inlineKind = OBJECT;
+        inline0 = inline1 = inline2 = inline3 = null;
+    }
+
+    /**
+     * Take ownership of this record.
+     * <p>
+     * When <tt>LogRecord</tt> pooling is enabled in the <tt>LogManager</tt>
+     * configuration, the records created by the <tt>Logger</tt>
+     * convenience methods are reused as soon as the logging call returns.
+     * A <tt>Handler</tt> or <tt>Filter</tt> which keeps a reference to a
+     * record beyond its <tt>publish</tt> or <tt>isLoggable</tt> call must
+     * call this method first; the record is then never reused.
+     * <p>
+     * Records which did not come from a pool are not affected.
+     *
+     * @return this record
+     */
+    public LogRecord retain() {
+        pooled = false;
+        return this;
+    }
+
     /**
      * Get the source Logger's name.
      *
@@ -217,7 +290,9 @@ public class LogRecord implements java.io.Serializable {
      * <p>
      * Sequence numbers are normally assigned in the LogRecord
      * constructor, which assigns unique sequence numbers to
-     * each new LogRecord in increasing order.
+     * each new LogRecord in increasing order.  If sequence numbers
+     * are allocated in per-thread blocks, see {@link SequenceAllocator},
+     * they only increase from one record of a thread to the next.
      * @return the sequence number
      */
     public long getSequenceNumber() {
@@ -250,9 +325,13 @@ public class LogRecord implements java.io.Serializable {
      * @return the source class name
      */
     public String getSourceClassName() {
-        if (needToInferCaller) {
-            inferCaller();
-        }
+        return getSourceClassName(CallSiteCache.ON);
+    }
+
+    // Package private method to get the source class name, inferring
+    // the caller as told by one of the CallSiteCache modes.
+    String getSourceClassName(int inferCaller) {
+        inferCaller(inferCaller);
         return sourceClassName;
     }
 
@@ -281,9 +360,13 @@ public class LogRecord implements java.io.Serializable {
      * @return the source method name
      */
     public String getSourceMethodName() {
-        if (needToInferCaller) {
-            inferCaller();
-        }
+        return getSourceMethodName(CallSiteCache.ON);
+    }
+
+    // Package private method to get the source method name, inferring
+    // the caller as told by one of the CallSiteCache modes.
+    String getSourceMethodName(int inferCaller) {
+        inferCaller(inferCaller);
         return sourceMethodName;
     }
 
@@ -331,7 +414,19 @@ public class LogRecord implements java.io.Serializable {
      *                  there are no parameters.
      */
     public Object[] getParameters() {
-        return parameters;
+        if (inlineCount == 0) {
+            return parameters;
+        }
+        // Two threads may both box the parameters; either array will do.
+        Object params[] = boxedParameters;
+        if (params == null) {
+            params = new Object[inlineCount];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = getInlineParameter(i);
+            }
+            boxedParameters = params;
+        }
+        return params;
     }
 
     /**
@@ -341,6 +436,84 @@ public class LogRecord implements java.io.Serializable {
      */
     public void setParameters(Object parameters[]) {
         this.parameters = parameters;
+        clearInline();
+    }
+
+    // Package private methods used by the Logger methods which take
+    // their parameters one by one, to set them without an Object[].
+
+    void setInlineParameters(Object param0) {
+        setInlineCount(1);
+        inline0 = param0;
+    }
+
+    void setInlineParameters(Object param0, Object param1) {
+        setInlineCount(2);
+        inline0 = param0;
+        inline1 = param1;
+    }
+
+    void setInlineParameters(Object param0, Object param1, Object param2) {
+        setInlineCount(3);
+        inline0 = param0;
+        inline1 = param1;
+        inline2 = param2;
+    }
+
+    void setInlineParameters(Object param0, Object param1, Object param2, Object param3) {
+        setInlineCount(4);
+        inline0 = param0;
+        inline1 = param1;
+        inline2 = param2;
+        inline3 = param3;
+    }
+
+    // Set a single primitive parameter, given its kind and its value
+    // as a long (the raw bits of a double).
+    void setInlineParameter(int kind, long bits) {
+        setInlineCount(1);
+        inlineKind = kind;
+        inlineBits = bits;
+    }
+
+    private void setInlineCount(int count) {
+        parameters = null;
+        clearInline();
+        inlineCount = count;
+    }
+
+    // Package private methods used by the formatters to read the inline
+    // parameters without boxing the primitive ones.
+
+    int getInlineCount() {
+        return inlineCount;
+    }
+
+    int getInlineKind(int i) {
+        return i == 0 ? inlineKind : OBJECT;
+    }
+
+    // The value of the inline parameter, if it is of a primitive kind.
+    long getInlineBits() {
+        return inlineBits;
+    }
+
+    // The value of an inline parameter, boxed if it is primitive.
+    Object getInlineParameter(int i) {
+        switch (getInlineKind(i)) {
+            case INT: return Integer.valueOf((int) getInlineBits());
+            case LONG: return Long.valueOf(getInlineBits());
+            case DOUBLE: return Double.valueOf(Double.longBitsToDouble(getInlineBits()));
+            case BOOLEAN: return Boolean.valueOf(getInlineBits() != 0);
+            case CHAR: return Character.valueOf((char) getInlineBits());
+            default: break;
+        }
+        switch (i) {
+            case 0: return inline0;
+            case 1: return inline1;
+            case 2: return inline2;
+            default: return inline3;
+        }
     }
 
     /**
@@ -421,6 +594,7 @@ public class LogRecord implements java.io.Serializable {
         // Write our version number.
         out.writeByte(1);
         out.writeByte(0);
+        Object parameters[] = getParameters();
         if (parameters == null) {
             out.writeInt(-1);
             return;
@@ -484,8 +658,31 @@ public class LogRecord implements java.io.Serializable {
         needToInferCaller = false;
     }
 
-    // Private method to infer the caller's class and method names
-    private void inferCaller() {
+    // Package private methods used for records logged at a LogSite
+    // whose caller is inferred.
+
+    void setLogSite(LogSite site) {
+        this.site = site;
+    }
+
+    LogSite getLogSite() {
+        return site;
+    }
+
+    // Private method to infer the caller's class and method names,
+    // unless that is turned off.
+    private void inferCaller(int mode) {
+        if (!needToInferCaller || mode == CallSiteCache.OFF) {
+            return;
+        }
+        needToInferCaller = false;
+        CallSiteCache.inferCaller(this);
+    }
+
+    // Package private method to infer the caller's class and method
+    // names from the stack.  Returns false if the record is not being
+    // logged on this thread.
+    boolean walkCaller() {
         needToInferCaller = false;
         JavaLangAccess access = SharedSecrets.getJavaLangAccess();
         Throwable throwable = new Throwable();
@@ -511,18 +708,22 @@ public class LogRecord implements java.io.Serializable {
                        // We've found the relevant frame.
                        setSourceClassName(cname);
                        setSourceMethodName(frame.getMethodName());
-                       return;
+                       return true;
                     }
                 }
             }
         }
         // We haven't found a suitable frame, so just punt.  This is
         // OK as we are only committed to making a "best effort" here.
+        return !lookingForLogger;
     }
 
     private boolean isLoggerImplFrame(String cname) {
         // the log record could be created for a platform logger
-        return (cname.equals("java.util.logging.Logger") ||
+        return (cname.equals("com.pancras.logging.Logger") ||
+                cname.equals("com.pancras.logging.LogManager$RootLogger") ||
+                cname.startsWith("com.pancras.logging.LoggingProxyImpl") ||
+                cname.equals("java.util.logging.Logger") ||
                 cname.startsWith("java.util.logging.LoggingProxyImpl") ||
                 cname.startsWith("sun.util.logging."));
     }
@@ -0,0 +1,88 @@
+package com.pancras.logging;
+
+/**
+ * A small per-thread pool of <tt>LogRecords</tt> used by the
+ * <tt>Logger</tt> convenience methods.
+ * <p>
+ * Pooling is off by default.  It is switched on by setting the
+ * <tt>com.pancras.logging.LogRecord.pooling</tt> property of the
+ * <tt>LogManager</tt> configuration to <tt>true</tt>.
+ * <p>
+ * A record taken from the pool is owned by the logging call that took
+ * it.  Once the call has returned from <tt>Logger.log(LogRecord)</tt>
+ * the record is reset and handed out again, unless some
+ * <tt>Handler</tt> or <tt>Filter</tt> has called
+ * {@link LogRecord#retain()} on it in the meantime.
+ */
+final class LogRecordPool {
+    // The number of free records kept per thread.  More than one
+    // is needed only when a handler itself logs while publishing.
+    private final static int POOL_SIZE = 4;
+
+    private static volatile boolean enabled;
+
+    private static final ThreadLocal<LogRecordPool> pools = new ThreadLocal<LogRecordPool>() {
+        @Override
+        protected LogRecordPool initialValue() {
+            return new LogRecordPool();
+        }
+    };
+
+    private final LogRecord free[] = new LogRecord[POOL_SIZE];
+    private int count;
+    // The thread ID of the owning thread, assigned by the first record.
+    private int threadID;
+
+    private LogRecordPool() {
+    }
+
+    static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Return a record for the current thread, initialized as if by
+     * <tt>new LogRecord(level, msg)</tt>.  If pooling is disabled
+     * this simply creates a new record.
+     */
+    static LogRecord acquire(Level level, String msg) {
+        if (!enabled) {
+            return new LogRecord(level, msg);
+        }
+        // Make sure level isn't null, by calling random method.
+        level.getClass();
+        LogRecordPool pool = pools.get();
+        LogRecord record;
+        if (pool.count > 0) {
+            record = pool.free[--pool.count];
+            pool.free[pool.count] = null;
+            record.reset(level, msg, pool.threadID);
+        } else {
+            record = new LogRecord(level, msg);
+            pool.threadID = record.getThreadID();
+        }
+        record.pooled = true;
+        return record;
+    }
+
+    /**
+     * Give a record back to the current thread's pool, unless it was
+     * not taken from a pool or has been retained.
+     */
+    static void release(LogRecord record) {
+        if (!record.pooled) {
+            return;
+        }
+        record.pooled = false;
+        LogRecordPool pool = pools.get();
+        if (pool.count < POOL_SIZE) {
+            // Don't hold on to the caller's objects while pooled.
+            record.clear();
+            pool.free[pool.count++] = record;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.pancras.logging;
+
+/**
+ * A place in the code which logs, known in advance.
+ * <p>
+ * A <tt>LogSite</tt> is usually created once and kept in a static final
+ * field next to the code it describes:
+ * <pre>
+ *     private static final Logger logger = Logger.getLogger("com.wombat.nose");
+ *     private static final LogSite SNIFF =
+ *         new LogSite(logger, Level.FINE, "com.wombat.Nose", "sniff");
+ *     ...
+ *     logger.log(SNIFF, "sniffed {0}", smell);
+ * </pre>
+ * Records logged through a site get the site's level and its source
+ * class and method names, as with
+ * {@link Logger#logp(Level, String, String, String) Logger.logp}, so the
+ * caller is never inferred from the stack.
+ * <p>
+ * A site created without a source class and method has its caller
+ * inferred from the stack for the first record logged at it, as for
+ * {@link Logger#log(Level, String) Logger.log}, and remembered for the
+ * records logged at it after that.  Such a site should be used from a
+ * single place in the code.
+ * <p>
+ * A site can also be turned off on its own, whatever the level of its
+ * logger.
+ */
+public final class LogSite {
+    private final Logger logger;
+    private final Level level;
+    private final String sourceClass;
+    private final String sourceMethod;
+    // True if the caller is inferred rather than given.
+    private final boolean inferCaller;
+    private volatile Caller caller;
+    private volatile boolean enabled = true;
+
+    // The caller inferred for the site.
+    private static final class Caller {
+        final String className;
+        final String methodName;
+
+        Caller(String className, String methodName) {
+            this.className = className;
+            this.methodName = methodName;
+        }
+    }
+
+    /**
+     * Create a <tt>LogSite</tt>.
+     *
+     * @param logger  the logger the site logs to
+     * @param level  the level of the messages logged at the site
+     * @param sourceClass  name of the class logging (may be null)
+     * @param sourceMethod  name of the method logging (may be null)
+     * @throws NullPointerException if <tt>logger</tt> or <tt>level</tt>
+     *         is null
+     */
+    public LogSite(Logger logger, Level level, String sourceClass, String sourceMethod) {
+        if (logger == null || level == null) {
+            throw new NullPointerException();
+        }
+        this.logger = logger;
+        this.level = level;
+        this.sourceClass = sourceClass;
+        this.sourceMethod = sourceMethod;
+        inferCaller = false;
+    }
+
+    /**
+     * Create a <tt>LogSite</tt> whose source class and method are
+     * inferred from the stack the first time they are needed.
+     *
+     * @param logger  the logger the site logs to
+     * @param level  the level of the messages logged at the site
+     * @throws NullPointerException if <tt>logger</tt> or <tt>level</tt>
+     *         is null
+     */
+    public LogSite(Logger logger, Level level) {
+        if (logger == null || level == null) {
+            throw new NullPointerException();
+        }
+        this.logger = logger;
+        this.level = level;
+        sourceClass = null;
+        sourceMethod = null;
+        inferCaller = true;
+    }
+
+    /**
+     * Get the logger the site logs to.  Only this logger's
+     * <tt>log</tt> methods accept the site.
+     *
+     * @return the logger of the site
+     */
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Get the level of the messages logged at the site.
+     *
+     * @return the level of the site
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the name of the class logging at the site.
+     *
+     * @return the source class name (may be null, or not yet
+     *         inferred)
+     */
+    public String getSourceClassName() {
+        if (inferCaller) {
+            Caller c = caller;
+            return c == null ? null : c.className;
+        }
+        return sourceClass;
+    }
+
+    /**
+     * Get the name of the method logging at the site.
+     *
+     * @return the source method name (may be null, or not yet
+     *         inferred)
+     */
+    public String getSourceMethodName() {
+        if (inferCaller) {
+            Caller c = caller;
+            return c == null ? null : c.methodName;
+        }
+        return sourceMethod;
+    }
+
+    // Package private method to give a record logged at the site its
+    // source.  Returns false if the caller is still to be inferred.
+    boolean setSource(LogRecord record) {
+        String cname = sourceClass;
+        String mname = sourceMethod;
+        if (inferCaller) {
+            Caller c = caller;
+            if (c == null) {
+                return false;
+            }
+            cname = c.className;
+            mname = c.methodName;
+        }
+        record.setSourceClassName(cname);
+        record.setSourceMethodName(mname);
+        return true;
+    }
+
+    // Package private method to remember the caller inferred for a
+    // record logged at the site.
+    void setCaller(String className, String methodName) {
+        if (inferCaller && caller == null) {
+            caller = new Caller(className, methodName);
+        }
+    }
+
+    /**
+     * Turn the site on or off.  Nothing is logged through a site
+     * which is off.  Sites are on when created.
+     *
+     * @param enabled  true to turn the site on
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Tell whether the site is on.
+     *
+     * @return true if the site is on
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if a message logged at the site would actually be logged
+     * by its logger: the site must be on and the logger must be
+     * enabled for the level of the site.
+     *
+     * @return true if a message logged at the site is currently logged
+     */
+    public boolean isLoggable() {
+        return enabled && logger.isLoggable(level);
+    }
+
+    @Override
+    public String toString() {
+        return "LogSite[" + logger.getName() + ", " + level + ", "
+                + getSourceClassName() + ", " + getSourceMethodName() + "]";
+    }
+}
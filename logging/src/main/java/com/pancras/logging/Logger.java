@@ -8,7 +8,9 @@ import java.util.Iterator;
 import java.util.Locale;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 import sun.reflect.CallerSensitive;
@@ -61,6 +63,13 @@ public class Logger {
     private volatile Filter filter;
     private boolean anonymous;
 
+    // The bundle records logged here are localized with, as last
+    // computed; null until computed.
+    private volatile EffectiveBundle effectiveBundle;
+    // Counts the changes which may change the effective bundles: new
+    // bundles and reparenting.
+    private static final AtomicInteger bundleStamp = new AtomicInteger();
+
     // Cache to speed up behavior of findResourceBundle:
     private ResourceBundle catalog;     // Cached resource bundle
     private String catalogName;         // name associated with catalog
@@ -78,6 +87,58 @@ public class Logger {
     private WeakReference<ClassLoader> callersClassLoaderRef;
     private final boolean isSystemLogger;
 
+    // The handlers of this logger and of its parents, as far as they
+    // are used, in the order they are published to; null until
+    // computed.  Cleared under the treeLock for a logger and all its
+    // children when the handlers of one of them, or the tree, change.
+    private volatile Handler[] handlerChain;
+    // Counts the changes which clear handler chains, so that a chain
+    // computed while one was made is not kept.  Guarded by treeLock.
+    private static int handlerChainStamp;
+    // The lowest level accepted by the handlers of the chain, as last
+    // computed; null until computed.
+    private volatile HandlerThreshold handlerThreshold;
+    // Tells, by class, whether the handler chain can be computed once,
+    // which is only if getHandlers, getUseParentHandlers and getParent
+    // are not overridden (CHAINABLE); and whether records below the
+    // levels of the handlers can be dropped, which is only if log(LogRecord)
+    // is not overridden either (THRESHOLD); and whether the effective
+    // bundle can be computed once, which is only if getResourceBundle,
+    // getResourceBundleName and getParent are not overridden (BUNDLE).
+    private static final ConcurrentHashMap<Class<?>,Integer> classFlags =
+            new ConcurrentHashMap<Class<?>,Integer>();
+    private static final ConcurrentHashMap<Class<?>,Boolean> cutoffHandlerClasses =
+            new ConcurrentHashMap<Class<?>,Boolean>();
+    private static final int CHAINABLE = 1;
+    private static final int THRESHOLD = 2;
+    private static final int BUNDLE = 4;
+
+    // The lowest level accepted by the handlers of a handler chain.
+    private static final class HandlerThreshold {
+        final Handler[] chain;
+        final int epoch;
+        final int levelValue;
+
+        HandlerThreshold(Handler[] chain, int epoch, int levelValue) {
+            this.chain = chain;
+            this.epoch = epoch;
+            this.levelValue = levelValue;
+        }
+    }
+
+    // The effective bundle of a logger, for a default locale.
+    private static final class EffectiveBundle {
+        final LoggerBundle bundle;
+        final Locale locale;
+        final int stamp;
+
+        EffectiveBundle(LoggerBundle bundle, Locale locale, int stamp) {
+            this.bundle = bundle;
+            this.locale = locale;
+            this.stamp = stamp;
+        }
+    }
+
     /**
      * GLOBAL_LOGGER_NAME is a name for the global logger.
      *
@@ -526,6 +587,19 @@ public class Logger {
         // Post the LogRecord to all our Handlers, and then to
         // our parents' handlers, all the way up the tree.
 
+        Handler[] chain = handlerChain;
+        if (chain == null) {
+            chain = computeHandlerChain();
+        }
+        if (chain != null) {
+            for (Handler handler : chain) {
+                handler.publish(record);
+            }
+            return;
+        }
+
+        // Some logger in the tree computes its handlers or parent
+        // in its own way, so ask each of them.
         Logger logger = this;
         while (logger != null) {
             final Handler[] loggerHandlers = isSystemLogger
@@ -548,6 +622,143 @@ public class Logger {
         }
     }
 
+    // Private method to compute, and keep if nothing changed meanwhile,
+    // the handlers a record logged here is published to.  Returns null
+    // if they can't be computed once.
+    private Handler[] computeHandlerChain() {
+        int stamp;
+        synchronized (treeLock) {
+            stamp = handlerChainStamp;
+        }
+        ArrayList<Handler> chain = new ArrayList<Handler>();
+        Logger logger = this;
+        while (logger != null) {
+            if (!isSystemLogger && !logger.isChainable()) {
+                return null;
+            }
+            // For the root logger, this initializes the global handlers.
+            for (Handler handler : logger.accessCheckedHandlers()) {
+                chain.add(handler);
+            }
+            if (!logger.useParentHandlers) {
+                break;
+            }
+            logger = logger.parent;
+        }
+        Handler[] result = chain.toArray(emptyHandlers);
+        synchronized (treeLock) {
+            if (stamp == handlerChainStamp) {
+                handlerChain = result;
+            }
+        }
+        return result;
+    }
+
+    private boolean isChainable() {
+        return (classFlags() & CHAINABLE) != 0;
+    }
+
+    private int classFlags() {
+        Class<?> c = getClass();
+        if (c == Logger.class) {
+            return CHAINABLE | THRESHOLD | BUNDLE;
+        }
+        Integer flags = classFlags.get(c);
+        if (flags == null) {
+            int f = 0;
+            try {
+                if (c.getMethod("getHandlers").getDeclaringClass() == Logger.class
+                        && c.getMethod("getUseParentHandlers").getDeclaringClass() == Logger.class
+                        && c.getMethod("getParent").getDeclaringClass() == Logger.class) {
+                    f = CHAINABLE;
+                    if (c.getMethod("log", LogRecord.class).getDeclaringClass() == Logger.class) {
+                        f |= THRESHOLD;
+                    }
+                }
+                if (c.getMethod("getResourceBundle").getDeclaringClass() == Logger.class
+                        && c.getMethod("getResourceBundleName").getDeclaringClass() == Logger.class
+                        && c.getMethod("getParent").getDeclaringClass() == Logger.class) {
+                    f |= BUNDLE;
+                }
+            } catch (Exception ex) {
+                // Assume the worst.
+            }
+            flags = f;
+            classFlags.put(c, flags);
+        }
+        return flags;
+    }
+
+    // Private method to compute the lowest level accepted by the
+    // handlers a record logged here is published to.
+    private HandlerThreshold computeHandlerThreshold() {
+        // Read the epoch first, so that a level changed meanwhile
+        // makes us compute again next time.
+        int epoch = Handler.levelEpoch;
+        Handler[] chain = handlerChain;
+        int min = Integer.MIN_VALUE;
+        // Without a chain, every record goes to log(LogRecord).
+        if ((classFlags() & THRESHOLD) != 0) {
+            if (chain == null) {
+                chain = computeHandlerChain();
+            }
+            if (chain != null) {
+                min = Integer.MAX_VALUE;
+                for (Handler handler : chain) {
+                    min = Math.min(min, hasLevelCutoff(handler)
+                            ? handler.getLevel().intValue() : Integer.MIN_VALUE);
+                }
+            }
+        }
+        HandlerThreshold threshold = new HandlerThreshold(chain, epoch, min);
+        handlerThreshold = threshold;
+        return threshold;
+    }
+
+    // Tells whether a handler drops the records below its level.  Ours
+    // do; other handlers may accept them by overriding isLoggable.
+    private static boolean hasLevelCutoff(Handler handler) {
+        Class<?> c = handler.getClass();
+        Boolean cutoff = cutoffHandlerClasses.get(c);
+        if (cutoff == null) {
+            try {
+                cutoff = isOurs(c.getMethod("isLoggable", LogRecord.class).getDeclaringClass())
+                        && isOurs(c.getMethod("getLevel").getDeclaringClass());
+            } catch (Exception ex) {
+                cutoff = Boolean.FALSE;
+            }
+            cutoffHandlerClasses.put(c, cutoff);
+        }
+        return cutoff;
+    }
+
+    private static boolean isOurs(Class<?> c) {
+        return c.getClassLoader() == Handler.class.getClassLoader()
+                && c.getName().startsWith("com.pancras.logging.")
+                && c.getName().indexOf('.', "com.pancras.logging.".length()) < 0;
+    }
+
+    // Clear the handler chains of this logger and of its children.
+    void clearHandlerChains() {
+        synchronized (treeLock) {
+            handlerChainStamp++;
+            doClearHandlerChains();
+        }
+    }
+
+    private void doClearHandlerChains() {
+        // assert Thread.holdsLock(treeLock);
+        handlerChain = null;
+        if (kids != null) {
+            for (int i = 0; i < kids.size(); i++) {
+                Logger kid = kids.get(i).get();
+                if (kid != null) {
+                    kid.doClearHandlerChains();
+                }
+            }
+        }
+    }
+
     // private support method for logging.
     // We fill in the logger name, resource bundle name, and
     // resource bundle and then call "void log(LogRecord)".
@@ -561,6 +772,7 @@ public class Logger {
             lr.setResourceBundle(bundle);
         }
         log(lr);
+        LogRecordPool.release(lr);
     }
 
 
@@ -582,7 +794,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         doLog(lr);
     }
 
@@ -604,7 +816,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msgSupplier.get());
+        LogRecord lr = LogRecordPool.acquire(level, msgSupplier.get());
         doLog(lr);
     }
 
@@ -623,9 +835,183 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
-        Object params[] = { param1 };
-        lr.setParameters(params);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameters(param1);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with two object parameters.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  No array is
+     * allocated for the parameters.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  first parameter to the message
+     * @param   param2  second parameter to the message
+     */
+    public void log(Level level, String msg, Object param1, Object param2) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameters(param1, param2);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with three object parameters.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  No array is
+     * allocated for the parameters.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  first parameter to the message
+     * @param   param2  second parameter to the message
+     * @param   param3  third parameter to the message
+     */
+    public void log(Level level, String msg, Object param1, Object param2, Object param3) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameters(param1, param2, param3);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with four object parameters.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  No array is
+     * allocated for the parameters.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  first parameter to the message
+     * @param   param2  second parameter to the message
+     * @param   param3  third parameter to the message
+     * @param   param4  fourth parameter to the message
+     */
+    public void log(Level level, String msg, Object param1, Object param2,
+                    Object param3, Object param4) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameters(param1, param2, param3, param4);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with one <tt>int</tt> parameter.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  The parameter
+     * is only boxed if a <tt>Formatter</tt> needs it as an object.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  parameter to the message
+     */
+    public void log(Level level, String msg, int param1) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameter(LogRecord.INT, param1);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with one <tt>long</tt> parameter.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  The parameter
+     * is only boxed if a <tt>Formatter</tt> needs it as an object.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  parameter to the message
+     */
+    public void log(Level level, String msg, long param1) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameter(LogRecord.LONG, param1);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with one <tt>double</tt> parameter.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  The parameter
+     * is only boxed if a <tt>Formatter</tt> needs it as an object.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  parameter to the message
+     */
+    public void log(Level level, String msg, double param1) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameter(LogRecord.DOUBLE, Double.doubleToRawLongBits(param1));
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with one <tt>boolean</tt> parameter.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  The parameter
+     * is only boxed if a <tt>Formatter</tt> needs it as an object.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  parameter to the message
+     */
+    public void log(Level level, String msg, boolean param1) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameter(LogRecord.BOOLEAN, param1 ? 1 : 0);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message, with one <tt>char</tt> parameter.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then a corresponding LogRecord is created and forwarded
+     * to all the registered output Handler objects.  The parameter
+     * is only boxed if a <tt>Formatter</tt> needs it as an object.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   param1  parameter to the message
+     */
+    public void log(Level level, String msg, char param1) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setInlineParameter(LogRecord.CHAR, param1);
         doLog(lr);
     }
 
@@ -644,11 +1030,35 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setParameters(params);
         doLog(lr);
     }
 
+    /**
+     * Log a message, with an array of object arguments which is only to
+     * be constructed if the logging level is such that the message will
+     * actually be logged.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then the parameters are obtained from the supplier and a
+     * corresponding LogRecord is created and forwarded to all the
+     * registered output Handler objects.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   paramsSupplier   A function, which when called, produces the
+     *                           parameters to the message
+     */
+    public void log(Level level, String msg, Supplier<Object[]> paramsSupplier) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setParameters(paramsSupplier.get());
+        doLog(lr);
+    }
+
     /**
      * Log a message, with associated Throwable information.
      * <p>
@@ -669,7 +1079,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setThrown(thrown);
         doLog(lr);
     }
@@ -697,7 +1107,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msgSupplier.get());
+        LogRecord lr = LogRecordPool.acquire(level, msgSupplier.get());
         lr.setThrown(thrown);
         doLog(lr);
     }
@@ -723,7 +1133,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         doLog(lr);
@@ -750,7 +1160,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msgSupplier.get());
+        LogRecord lr = LogRecordPool.acquire(level, msgSupplier.get());
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         doLog(lr);
@@ -775,11 +1185,10 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
-        Object params[] = { param1 };
-        lr.setParameters(params);
+        lr.setInlineParameters(param1);
         doLog(lr);
     }
 
@@ -802,13 +1211,42 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setParameters(params);
         doLog(lr);
     }
 
+    /**
+     * Log a message, specifying source class and method, with an array
+     * of object arguments which is only to be constructed if the logging
+     * level is such that the message will actually be logged.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then the parameters are obtained from the supplier and a
+     * corresponding LogRecord is created and forwarded to all the
+     * registered output Handler objects.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   sourceClass    name of class that issued the logging request
+     * @param   sourceMethod   name of method that issued the logging request
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   paramsSupplier   A function, which when called, produces the
+     *                           parameters to the message
+     */
+    public void logp(Level level, String sourceClass, String sourceMethod,
+                     String msg, Supplier<Object[]> paramsSupplier) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setSourceClassName(sourceClass);
+        lr.setSourceMethodName(sourceMethod);
+        lr.setParameters(paramsSupplier.get());
+        doLog(lr);
+    }
+
     /**
      * Log a message, specifying source class and method,
      * with associated Throwable information.
@@ -833,7 +1271,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setThrown(thrown);
@@ -867,7 +1305,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msgSupplier.get());
+        LogRecord lr = LogRecordPool.acquire(level, msgSupplier.get());
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setThrown(thrown);
@@ -875,6 +1313,147 @@ public class Logger {
     }
 
 
+    //=========================================================================
+    // Start of convenience methods WITH a LogSite
+    //=========================================================================
+
+    // Private support method for logging at a LogSite: check that the
+    // site belongs to this logger, then whether it is on and whether
+    // its level is enabled here.
+    private boolean isLoggable(LogSite site) {
+        if (site.getLogger() != this) {
+            throw new IllegalArgumentException(site + " is not a site of logger " + name);
+        }
+        return site.isEnabled() && isLoggable(site.getLevel());
+    }
+
+    // Private support method for logging at a LogSite: make a record
+    // with the level and the source of the site, or tied to the site
+    // so that the caller inferred for it is remembered.
+    private LogRecord siteRecord(LogSite site, String msg) {
+        LogRecord lr = LogRecordPool.acquire(site.getLevel(), msg);
+        if (!site.setSource(lr)) {
+            lr.setLogSite(site);
+        }
+        return lr;
+    }
+
+    /**
+     * Log a message at a given site, with no arguments.
+     * <p>
+     * If the site is on and the logger is currently enabled for the
+     * level of the site then the given message is forwarded to all the
+     * registered output Handler objects.  The record gets the level and
+     * the source class and method of the site, as with
+     * {@link #logp(Level, String, String, String) logp}.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   msg     The string message (or a key in the message catalog)
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, String msg) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        doLog(siteRecord(site, msg));
+    }
+
+    /**
+     * Log a message at a given site, which is only to be constructed
+     * if the site is on and the logging level is such that the message
+     * will actually be logged.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   msgSupplier   A function, which when called, produces the
+     *                        desired log message
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, Supplier<String> msgSupplier) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        doLog(siteRecord(site, msgSupplier.get()));
+    }
+
+    /**
+     * Log a message at a given site, with a single object parameter
+     * to the log message.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   msg      The string message (or a key in the message catalog)
+     * @param   param1    Parameter to the log message.
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, String msg, Object param1) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        LogRecord lr = siteRecord(site, msg);
+        lr.setInlineParameters(param1);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message at a given site, with an array of object arguments.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   params  Array of parameters to the message
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, String msg, Object params[]) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        LogRecord lr = siteRecord(site, msg);
+        lr.setParameters(params);
+        doLog(lr);
+    }
+
+    /**
+     * Log a message at a given site, with associated Throwable
+     * information.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   thrown  Throwable associated with log message.
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, String msg, Throwable thrown) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        LogRecord lr = siteRecord(site, msg);
+        lr.setThrown(thrown);
+        doLog(lr);
+    }
+
+    /**
+     * Log a lazily constructed message at a given site, with associated
+     * Throwable information.
+     * <p>
+     * @param   site    the site the message is logged at
+     * @param   thrown  Throwable associated with the log message.
+     * @param   msgSupplier   A function, which when called, produces the
+     *                        desired log message
+     * @throws  IllegalArgumentException if the site is not a site of
+     *          this logger
+     */
+    public void log(LogSite site, Throwable thrown, Supplier<String> msgSupplier) {
+        if (!isLoggable(site)) {
+            return;
+        }
+        LogRecord lr = siteRecord(site, msgSupplier.get());
+        lr.setThrown(thrown);
+        doLog(lr);
+    }
+
+
     //=========================================================================
     // Start of convenience methods WITH className, methodName and bundle name.
     //=========================================================================
@@ -889,6 +1468,7 @@ public class Logger {
             lr.setResourceBundle(findResourceBundle(rbname, false));
         }
         log(lr);
+        LogRecordPool.release(lr);
     }
 
     // Private support method for logging for "logrb" methods.
@@ -899,6 +1479,7 @@ public class Logger {
             lr.setResourceBundle(rb);
         }
         log(lr);
+        LogRecordPool.release(lr);
     }
 
     /**
@@ -929,7 +1510,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         doLog(lr, bundleName);
@@ -964,11 +1545,10 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
-        Object params[] = { param1 };
-        lr.setParameters(params);
+        lr.setInlineParameters(param1);
         doLog(lr, bundleName);
     }
 
@@ -1001,7 +1581,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setParameters(params);
@@ -1034,7 +1614,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         if (params != null && params.length != 0) {
@@ -1043,6 +1623,44 @@ public class Logger {
         doLog(lr, bundle);
     }
 
+    /**
+     * Log a message, specifying source class, method, and resource bundle,
+     * with message parameters which are only to be constructed if the
+     * logging level is such that the message will actually be logged.
+     * <p>
+     * If the logger is currently enabled for the given message
+     * level then the parameters are obtained from the supplier and a
+     * corresponding LogRecord is created and forwarded to all the
+     * registered output Handler objects.
+     * <p>
+     * The {@code msg} string is localized using the given resource bundle.
+     * If the resource bundle is {@code null}, then the {@code msg} string is not
+     * localized.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   sourceClass    Name of the class that issued the logging request
+     * @param   sourceMethod   Name of the method that issued the logging request
+     * @param   bundle         Resource bundle to localize {@code msg},
+     *                         can be {@code null}.
+     * @param   msg     The string message (or a key in the message catalog)
+     * @param   paramsSupplier   A function, which when called, produces the
+     *                           parameters to the message
+     */
+    public void logrb(Level level, String sourceClass, String sourceMethod,
+                      ResourceBundle bundle, String msg, Supplier<Object[]> paramsSupplier) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setSourceClassName(sourceClass);
+        lr.setSourceMethodName(sourceMethod);
+        Object params[] = paramsSupplier.get();
+        if (params != null && params.length != 0) {
+            lr.setParameters(params);
+        }
+        doLog(lr, bundle);
+    }
+
     /**
      * Log a message, specifying source class, method, and resource bundle name,
      * with associated Throwable information.
@@ -1077,7 +1695,7 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setThrown(thrown);
@@ -1115,7 +1733,38 @@ public class Logger {
         if (!isLoggable(level)) {
             return;
         }
-        LogRecord lr = new LogRecord(level, msg);
+        LogRecord lr = LogRecordPool.acquire(level, msg);
+        lr.setSourceClassName(sourceClass);
+        lr.setSourceMethodName(sourceMethod);
+        lr.setThrown(thrown);
+        doLog(lr, bundle);
+    }
+
+    /**
+     * Log a message, specifying source class, method, and resource bundle,
+     * with associated Throwable information, where the message key is
+     * only to be constructed if the logging level is such that the
+     * message will actually be logged.
+     * <p>
+     * The message key is localized using the given resource bundle.
+     * If the resource bundle is {@code null}, then the message is not
+     * localized.
+     * <p>
+     * @param   level   One of the message level identifiers, e.g., SEVERE
+     * @param   sourceClass    Name of the class that issued the logging request
+     * @param   sourceMethod   Name of the method that issued the logging request
+     * @param   bundle         Resource bundle to localize the message,
+     *                         can be {@code null}
+     * @param   thrown  Throwable associated with the log message.
+     * @param   msgSupplier   A function, which when called, produces the
+     *                        message (or a key in the message catalog)
+     */
+    public void logrb(Level level, String sourceClass, String sourceMethod,
+                      ResourceBundle bundle, Throwable thrown, Supplier<String> msgSupplier) {
+        if (!isLoggable(level)) {
+            return;
+        }
+        LogRecord lr = LogRecordPool.acquire(level, msgSupplier.get());
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setThrown(thrown);
@@ -1182,6 +1831,29 @@ public class Logger {
         logp(Level.FINER, sourceClass, sourceMethod, msg, params);
     }
 
+    /**
+     * Log a method entry, with an array of parameters which is only to
+     * be constructed if the logger is enabled for <tt>FINER</tt>.
+     * <p>
+     * This is a convenience method that can be used to log entry
+     * to a method, as with {@link #entering(String, String, Object[])},
+     * when getting the parameters is costly.  It has a name of its own
+     * so that a <tt>null</tt> argument to <tt>entering</tt> still means
+     * no parameters.
+     * <p>
+     * @param   sourceClass    name of class that issued the logging request
+     * @param   sourceMethod   name of method that is being entered
+     * @param   paramsSupplier   A function, which when called, produces the
+     *                           parameters to the method being entered
+     */
+    public void enteringLazy(String sourceClass, String sourceMethod,
+                             Supplier<Object[]> paramsSupplier) {
+        if (!isLoggable(Level.FINER)) {
+            return;
+        }
+        entering(sourceClass, sourceMethod, paramsSupplier.get());
+    }
+
     /**
      * Log a method return.
      * <p>
@@ -1213,6 +1885,29 @@ public class Logger {
         logp(Level.FINER, sourceClass, sourceMethod, "RETURN {0}", result);
     }
 
+    /**
+     * Log a method return, with a result object which is only to be
+     * constructed if the logger is enabled for <tt>FINER</tt>.
+     * <p>
+     * This is a convenience method that can be used to log returning
+     * from a method, as with {@link #exiting(String, String, Object)},
+     * when describing the result is costly.  It has a name of its own
+     * so that a <tt>null</tt> result given to <tt>exiting</tt> is still
+     * logged as one.
+     * <p>
+     * @param   sourceClass    name of class that issued the logging request
+     * @param   sourceMethod   name of the method
+     * @param   resultSupplier   A function, which when called, produces
+     *                           the object that is being returned
+     */
+    public void exitingLazy(String sourceClass, String sourceMethod,
+                            Supplier<Object> resultSupplier) {
+        if (!isLoggable(Level.FINER)) {
+            return;
+        }
+        exiting(sourceClass, sourceMethod, resultSupplier.get());
+    }
+
     /**
      * Log throwing an exception.
      * <p>
@@ -1238,7 +1933,7 @@ public class Logger {
         if (!isLoggable(Level.FINER)) {
             return;
         }
-        LogRecord lr = new LogRecord(Level.FINER, "THROW");
+        LogRecord lr = LogRecordPool.acquire(Level.FINER, "THROW");
         lr.setSourceClassName(sourceClass);
         lr.setSourceMethodName(sourceMethod);
         lr.setThrown(thrown);
@@ -1511,14 +2206,25 @@ public class Logger {
      * by this logger.  This check is based on the Loggers effective level,
      * which may be inherited from its parent.
      *
+     * <p>
+     * Messages below the levels of all the <tt>Handlers</tt> they would
+     * be published to are not logged either, so that they are dropped
+     * before a <tt>LogRecord</tt> is made for them.
+     *
      * @param   level   a message logging level
      * @return  true if the given message level is currently being logged.
      */
     public boolean isLoggable(Level level) {
-        if (level.intValue() < levelValue || levelValue == offValue) {
+        final int value = level.intValue();
+        if (value < levelValue || levelValue == offValue) {
             return false;
         }
-        return true;
+        HandlerThreshold threshold = handlerThreshold;
+        if (threshold == null || threshold.chain != handlerChain
+                || threshold.epoch != Handler.levelEpoch) {
+            threshold = computeHandlerThreshold();
+        }
+        return value >= threshold.levelValue;
     }
 
     /**
@@ -1546,6 +2252,7 @@ public class Logger {
         handler.getClass();
         checkPermission();
         handlers.add(handler);
+        clearHandlerChains();
     }
 
     /**
@@ -1563,7 +2270,9 @@ public class Logger {
         if (handler == null) {
             return;
         }
-        handlers.remove(handler);
+        if (handlers.remove(handler)) {
+            clearHandlerChains();
+        }
     }
 
     /**
@@ -1596,6 +2305,7 @@ public class Logger {
     public void setUseParentHandlers(boolean useParentHandlers) {
         checkPermission();
         this.useParentHandlers = useParentHandlers;
+        clearHandlerChains();
     }
 
     /**
@@ -1748,6 +2458,7 @@ public class Logger {
         // if lb.userBundle is not null we won't reach this line.
         assert lb.userBundle == null;
         loggerBundle = LoggerBundle.get(name, null);
+        bundleStamp.incrementAndGet();
     }
 
     /**
@@ -1788,6 +2499,7 @@ public class Logger {
 
             loggerBundle = LoggerBundle.get(baseName, bundle);
         }
+        bundleStamp.incrementAndGet();
     }
 
     /**
@@ -1876,8 +2588,12 @@ public class Logger {
             parent.kids.add(ref);
 
             // As a result of the reparenting, the effective level
-            // may have changed for us and our children.
+            // may have changed for us and our children, and so may
+            // have the handlers.
             updateEffectiveLevel();
+            handlerChainStamp++;
+            doClearHandlerChains();
+            bundleStamp.incrementAndGet();
 
         }
     }
@@ -1942,6 +2658,34 @@ public class Logger {
     // resource bundle and resource bundle name for this Logger.
     // This method never returns null.
     private LoggerBundle getEffectiveLoggerBundle() {
+        final Locale locale = Locale.getDefault();
+        EffectiveBundle eb = effectiveBundle;
+        if (eb != null && eb.stamp == bundleStamp.get() && eb.locale == locale) {
+            return eb.bundle;
+        }
+        // Read the stamp first, so that a change made meanwhile
+        // makes us compute again next time.
+        final int stamp = bundleStamp.get();
+        final LoggerBundle result = computeEffectiveLoggerBundle();
+        // A bundle which could not be found may be found later, with
+        // another context class loader: look for it again next time.
+        if (result.resourceBundleName == null || result.userBundle != null
+                || result == SYSTEM_BUNDLE) {
+            boolean cacheable = true;
+            for (Logger logger = this; logger != null; logger = logger.parent) {
+                if (!logger.isSystemLogger && (logger.classFlags() & BUNDLE) == 0) {
+                    cacheable = false;
+                    break;
+                }
+            }
+            if (cacheable) {
+                effectiveBundle = new EffectiveBundle(result, locale, stamp);
+            }
+        }
+        return result;
+    }
+
+    private LoggerBundle computeEffectiveLoggerBundle() {
         final LoggerBundle lb = loggerBundle;
         if (lb.isSystemBundle()) {
             return SYSTEM_BUNDLE;
@@ -0,0 +1,600 @@
+package com.pancras.logging;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * File <tt>Handler</tt> writing records into a memory-mapped window of
+ * the log file.
+ * <p>
+ * Each logging thread reserves a slice of the current window with a
+ * single atomic add and copies its record into it, so publishing a
+ * record takes neither a lock nor a system call.  Records are in the
+ * operating system's page cache as soon as <tt>publish</tt> returns and
+ * so survive a crash of the application (though not of the machine).
+ * <p>
+ * The thread whose record does not fit at the end of a window maps the
+ * next one, starting where the last complete record ended; the others
+ * wait for it.  On rotation and on close the file is truncated to the
+ * length actually written.
+ * <p>
+ * File naming, locking and rotation work as for {@link FileHandler}.
+ * Note that a window stays mapped until it is garbage collected, which
+ * on some platforms prevents renaming a rotated file for a while.
+ * <p>
+ * The file is padded with zero bytes up to the end of the current
+ * window until it is closed.  When appending to a file left so by a
+ * crash, the handler starts after the last byte which is not zero.
+ * <p>
+ * A <tt>FileChannel</tt> is closed when a thread using it is interrupted,
+ * so the interrupt status of a thread crossing a window is cleared while
+ * it does so, and restored afterwards.  If mapping the next window fails
+ * all the same, the next record published opens the file again.
+ * <p>
+ * <b>Configuration:</b>
+ * By default each <tt>MappedFileHandler</tt> is initialized using the following
+ * <tt>LogManager</tt> configuration properties where <tt>&lt;handler-name&gt;</tt>
+ * refers to the fully-qualified class-name of the handler.
+ * If properties are not defined
+ * (or have invalid values) then the specified default values are used.
+ * <ul>
+ * <li>   &lt;handler-name&gt;.level
+ *        specifies the default level for the <tt>Handler</tt>
+ *        (defaults to <tt>Level.ALL</tt>). </li>
+ * <li>   &lt;handler-name&gt;.filter
+ *        specifies the name of a <tt>Filter</tt> class to use
+ *        (defaults to no <tt>Filter</tt>). </li>
+ * <li>   &lt;handler-name&gt;.formatter
+ *        specifies the name of a <tt>Formatter</tt> class to use
+ *        (defaults to <tt>java.util.logging.XMLFormatter</tt>) </li>
+ * <li>   &lt;handler-name&gt;.encoder
+ *        specifies the name of an <tt>Encoder</tt> class to use
+ *        instead of the <tt>Formatter</tt> (defaults to none) </li>
+ * <li>   &lt;handler-name&gt;.encoding
+ *        the name of the character set encoding to use (defaults to
+ *        the default platform encoding). </li>
+ * <li>   &lt;handler-name&gt;.limit
+ *        specifies an approximate maximum amount to write (in bytes)
+ *        to any one file.  If this is zero, then there is no limit.
+ *        A suffix of k, m, g or t gives the size in kilobytes, megabytes,
+ *        gigabytes or terabytes, as in "512m".
+ *        (Defaults to no limit). </li>
+ * <li>   &lt;handler-name&gt;.count
+ *        specifies how many output files to cycle through (defaults to 1). </li>
+ * <li>   &lt;handler-name&gt;.pattern
+ *        specifies a pattern for generating the output file name.  See
+ *        {@link FileHandler} for details. (Defaults to "%h/java%u.log"). </li>
+ * <li>   &lt;handler-name&gt;.append
+ *        specifies whether the handler should append onto
+ *        any existing files (defaults to false). </li>
+ * <li>   &lt;handler-name&gt;.rotation
+ *        specifies how files are rotated: <tt>rename</tt> to rename every
+ *        generation, as <tt>FileHandler</tt> does, or <tt>index</tt> to give
+ *        each new file the next index instead (defaults to rename). </li>
+ * <li>   &lt;handler-name&gt;.compress
+ *        specifies whether files should be compressed with gzip once
+ *        rotated out, in the background (defaults to false). </li>
+ * <li>   &lt;handler-name&gt;.windowSize
+ *        the size of each mapped window, in bytes (defaults to 8 megabytes). </li>
+ * </ul>
+ */
+public class MappedFileHandler extends Handler {
+    private final static int DEFAULT_WINDOW_SIZE = 8 * 1024 * 1024;
+
+    private String pattern;
+    private long limit;      // zero => no limit.
+    private int count;
+    private boolean append;
+    private int windowSize;
+    private boolean indexed;
+    private boolean compress;
+    private LogFileSet fileSet;
+    private volatile Charset charset;
+
+    // The window being written.  Only the thread which crossed the end
+    // of the current window (or close) replaces it.
+    private volatile Window window;
+    // Where the next window starts, while there is none after a failure;
+    // written before window is set to null.
+    private long resume;
+    private FileChannel channel;
+    private volatile boolean doneHeader;
+    private volatile boolean closed;
+
+    // A mapped region of the file, and the slices handed out in it.
+    private static final class Window {
+        final MappedByteBuffer buffer;
+        // The file position of the start of the window.
+        final long base;
+        final int capacity;
+        // Bytes reserved by producers; may run past the capacity.
+        final AtomicLong reserved = new AtomicLong();
+        // Bytes actually copied into the window.
+        final AtomicLong committed = new AtomicLong();
+
+        Window(MappedByteBuffer buffer, long base) {
+            this.buffer = buffer;
+            this.base = base;
+            this.capacity = buffer.capacity();
+        }
+    }
+
+    // Private method to configure a MappedFileHandler from LogManager
+    // properties and/or default values as specified in the class
+    // javadoc.
+    private void configure() {
+        LogManager manager = LogManager.getLogManager();
+        String cname = getClass().getName();
+
+        pattern = manager.getStringProperty(cname + ".pattern", "%h/java%u.log");
+        limit = manager.getLongProperty(cname + ".limit", 0);
+        if (limit < 0) {
+            limit = 0;
+        }
+        count = manager.getIntProperty(cname + ".count", 1);
+        if (count <= 0) {
+            count = 1;
+        }
+        append = manager.getBooleanProperty(cname + ".append", false);
+        indexed = LogFileSet.isIndexed(manager, cname);
+        compress = manager.getBooleanProperty(cname + ".compress", false);
+        windowSize = manager.getIntProperty(cname + ".windowSize", DEFAULT_WINDOW_SIZE);
+        if (windowSize <= 0) {
+            windowSize = DEFAULT_WINDOW_SIZE;
+        }
+        setLevel(manager.getLevelProperty(cname + ".level", Level.ALL));
+        setFilter(manager.getFilterProperty(cname + ".filter", null));
+        setFormatter(manager.getFormatterProperty(cname + ".formatter", new XMLFormatter()));
+        setEncoder(manager.getEncoderProperty(cname + ".encoder", null));
+        try {
+            setEncoding(manager.getStringProperty(cname +".encoding", null));
+        } catch (Exception ex) {
+            try {
+                setEncoding(null);
+            } catch (Exception ex2) {
+                // doing a setEncoding with null should always work.
+                // assert false;
+            }
+        }
+    }
+
+    /**
+     * Construct a default <tt>MappedFileHandler</tt>.  This will be configured
+     * entirely from <tt>LogManager</tt> properties (or their default values).
+     *
+     * @exception  IOException if there are IO problems opening the files.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control"))</tt>.
+     * @exception  NullPointerException if pattern property is an empty String.
+     */
+    public MappedFileHandler() throws IOException, SecurityException {
+        checkPermission();
+        configure();
+        openFiles();
+    }
+
+    /**
+     * Initialize a <tt>MappedFileHandler</tt> to write to a set of files
+     * with optional append.  When (approximately) the given limit has
+     * been written to one file, another file will be opened.  The
+     * output will cycle through a set of count files.
+     * <p>
+     * The <tt>MappedFileHandler</tt> is configured based on <tt>LogManager</tt>
+     * properties (or their default values) except that the given pattern
+     * argument is used as the filename pattern, the file limit is
+     * set to the limit argument, and the file count is set to the
+     * given count argument, and the append mode is set to the given
+     * <tt>append</tt> argument.
+     * <p>
+     * The count must be at least 1.
+     *
+     * @param pattern  the pattern for naming the output file
+     * @param limit  the maximum number of bytes to write to any one file
+     * @param count  the number of files to use
+     * @param append  specifies append mode
+     * @exception  IOException if there are IO problems opening the files.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     * @exception  IllegalArgumentException if {@code limit < 0}, or {@code count < 1}.
+     * @exception  IllegalArgumentException if pattern is an empty string
+     */
+    public MappedFileHandler(String pattern, long limit, int count, boolean append)
+                                        throws IOException, SecurityException {
+        if (limit < 0 || count < 1 || pattern.length() < 1) {
+            throw new IllegalArgumentException();
+        }
+        checkPermission();
+        configure();
+        this.pattern = pattern;
+        this.limit = limit;
+        this.count = count;
+        this.append = append;
+        openFiles();
+    }
+
+    // Private method to lock the file set and open the first file.
+    private void openFiles() throws IOException {
+        LogManager manager = LogManager.getLogManager();
+        manager.checkPermission();
+
+        // Create a lock file.  This grants us exclusive access
+        // to our set of output files, as long as we are alive.
+        fileSet = new LogFileSet(pattern, count, indexed, compress);
+        fileSet.lock();
+        // An interrupt would close the channel; keep it for later.
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!append) {
+                fileSet.shift();
+            }
+            window = open(append, 0);
+        } catch (IOException ex) {
+            fileSet.release();
+            throw ex;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Open generation 0 and map the first window, big enough for at
+    // least "needed" bytes.  The head of the first file is written by
+    // the first publish, as StreamHandler does, so that it comes from
+    // the Formatter in use by then.
+    private Window open(boolean append, int needed) throws IOException {
+        if (append) {
+            channel = FileChannel.open(fileSet.file(0).toPath(), READ, WRITE, CREATE);
+        } else {
+            channel = FileChannel.open(fileSet.file(0).toPath(), READ, WRITE, CREATE, TRUNCATE_EXISTING);
+        }
+        long position = append ? dataEnd() : 0;
+        if (position == 0) {
+            position += write(ByteBuffer.wrap(EncodeBuffer.bom(charset)), position);
+            if (doneHeader) {
+                position += write(ByteBuffer.wrap(head()), position);
+            }
+        }
+        return map(position, needed);
+    }
+
+    // Find the end of the data in the file: a crash leaves the rest of
+    // the last window filled with zero bytes.  The end is rounded up to
+    // whole characters, for the encodings in which characters may end
+    // with a zero byte.
+    private long dataEnd() throws IOException {
+        long end = channel.size();
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        while (end > 0) {
+            int n = (int) Math.min(buf.capacity(), end);
+            buf.clear();
+            buf.limit(n);
+            long from = end - n;
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, from + buf.position()) < 0) {
+                    break;
+                }
+            }
+            int i = buf.position() - 1;
+            while (i >= 0 && buf.get(i) == 0) {
+                i--;
+            }
+            if (i >= 0) {
+                end = from + i + 1;
+                break;
+            }
+            end = from;
+        }
+        int unit = "\n".getBytes(EncodeBuffer.textCharset(charset)).length;
+        return (end + unit - 1) / unit * unit;
+    }
+
+    // Map a new window at the given file position.  With a limit, the
+    // window ends at the limit, so that crossing it means rotating.
+    private Window map(long position, int needed) throws IOException {
+        long size = windowSize;
+        if (limit > 0 && position < limit) {
+            size = Math.min(size, limit - position);
+        }
+        size = Math.max(size, needed);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        return new Window(buffer, position);
+    }
+
+    private byte[] head() {
+        String head = (getEncoder() != null) ? getEncoder().getHead(this) : getFormatter().getHead(this);
+        return head.getBytes(EncodeBuffer.textCharset(charset));
+    }
+
+    // Write the head of the first file, if not done yet.
+    private synchronized void writeHead() {
+        if (!doneHeader) {
+            try {
+                put(ByteBuffer.wrap(head()));
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+            doneHeader = true;
+        }
+    }
+
+    // Write bytes at a file position, returning the number written.
+    private int write(ByteBuffer bytes, long position) throws IOException {
+        int n = 0;
+        while (bytes.hasRemaining()) {
+            n += channel.write(bytes, position + n);
+        }
+        return n;
+    }
+
+    /**
+     * Set (or change) the character encoding used by this <tt>Handler</tt>.
+     * <p>
+     * The encoding should be set before any <tt>LogRecords</tt> are written
+     * to the <tt>Handler</tt>.
+     *
+     * @param encoding  The name of a supported character encoding.
+     *        May be null, to indicate the default platform encoding.
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     * @exception  UnsupportedEncodingException if the named encoding is
+     *          not supported.
+     */
+    @Override
+    public synchronized void setEncoding(String encoding)
+                        throws SecurityException, java.io.UnsupportedEncodingException {
+        super.setEncoding(encoding);
+        charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+    }
+
+    /**
+     * Format and publish a <tt>LogRecord</tt>.
+     * <p>
+     * The record is formatted on the calling thread and copied into the
+     * mapped window of the current log file.
+     *
+     * @param  record  description of the log event. A null record is
+     *                 silently ignored and is not published
+     */
+    @Override
+    public void publish(LogRecord record) {
+        if (!isLoggable(record)) {
+            return;
+        }
+        if (!doneHeader) {
+            writeHead();
+        }
+        EncodeBuffer eb = EncodeBuffer.acquire();
+        try {
+            ByteBuffer buf;
+            try {
+                buf = eb.encode(this, record, EncodeBuffer.textCharset(charset));
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+                return;
+            }
+            put(buf);
+        } finally {
+            eb.release();
+        }
+    }
+
+    // Copy an encoded record into the current window, moving on to
+    // the next window if it doesn't fit.
+    private void put(ByteBuffer buf) {
+        int len = buf.remaining();
+        for (;;) {
+            Window w = window;
+            if (closed) {
+                return;
+            }
+            if (w == null) {
+                // Mapping the next window failed; try again.
+                w = recover(len);
+                if (w == null) {
+                    return;
+                }
+            }
+            long pos = w.reserved.getAndAdd(len);
+            if (pos + len <= w.capacity) {
+                ByteBuffer slice = w.buffer.duplicate();
+                slice.position((int) pos);
+                slice.put(buf);
+                w.committed.addAndGet(len);
+                return;
+            }
+            if (pos <= w.capacity) {
+                // Ours is the reservation crossing the end of the window,
+                // so it is up to us to replace it.  Everything before
+                // "pos" was handed out and will be committed.
+                crossWindow(w, pos, len);
+            } else {
+                // Wait for the crossing thread to map the next window.
+                while (window == w) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    // Replace a full window, which ends at "end", by the next one;
+    // rotating the files if the limit has been reached.  Only one
+    // thread at a time gets here for a given window.
+    private void crossWindow(final Window w, final long end, final int needed) {
+        while (w.committed.get() < end) {
+            Thread.yield();
+        }
+        // An interrupt would close the channel; keep it for later.
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (limit > 0 && w.base + end >= limit) {
+                // We performed access checks in the "init" method to make sure
+                // we are only initialized from trusted code.  So we assume
+                // it is OK to write the target files, even if we are
+                // currently being called from untrusted code.
+                // So it is safe to raise privilege here.
+                window = AccessController.doPrivileged(new PrivilegedAction<Window>() {
+                    //@Override
+                    public Window run() {
+                        return rotate(w, end, needed);
+                    }
+                });
+            } else {
+                window = map(w.base + end, needed);
+            }
+        } catch (Exception ex) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            // Not synchronized: close() may be waiting for us holding
+            // the lock.  Publishing the null window publishes resume.
+            resume = w.base + end;
+            window = null;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Map a window again after crossing the end of the last one failed:
+    // at the position it ended, or at the end of the data if the file
+    // has to be opened again.  Returns null if this fails too.
+    private synchronized Window recover(int needed) {
+        if (closed || window != null) {
+            return window;
+        }
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (channel != null && channel.isOpen()) {
+                window = map(resume, needed);
+            } else {
+                window = open(true, needed);
+            }
+        } catch (Exception ex) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ex, ErrorManager.OPEN_FAILURE);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return window;
+    }
+
+    // Finish the current file and start a new one.
+    private Window rotate(Window w, long end, int needed) {
+        closeFile(w.base + end);
+        fileSet.shift();
+        try {
+            return open(false, needed);
+        } catch (IOException ix) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ix, ErrorManager.OPEN_FAILURE);
+            // The next record opens the new file again.
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    // Nothing more to do with it.
+                }
+                channel = null;
+            }
+            return null;
+        }
+    }
+
+    // Truncate the current file to the data written, write the tail
+    // and close it.
+    private void closeFile(long position) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.truncate(position);
+            String tail = (getEncoder() != null) ? getEncoder().getTail(this) : getFormatter().getTail(this);
+            write(ByteBuffer.wrap(tail.getBytes(EncodeBuffer.textCharset(charset))), position);
+            channel.close();
+        } catch (Exception ex) {
+            // We don't want to throw an exception here, but we
+            // report the exception to any registered ErrorManager.
+            reportError(null, ex, ErrorManager.CLOSE_FAILURE);
+        }
+        channel = null;
+    }
+
+    /**
+     * Flush any buffered output.
+     * <p>
+     * Records are in the operating system's cache as soon as they have
+     * been published, so there is nothing to do here.
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * Close all the files.
+     * <p>
+     * The current file is truncated to the length actually written.
+     *
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     */
+    @Override
+    public synchronized void close() throws SecurityException {
+        checkPermission();
+        if (closed) {
+            return;
+        }
+        writeHead();
+        closed = true;
+        // An interrupt would close the channel; keep it for later.
+        boolean interrupted = Thread.interrupted();
+        // Take the rest of the current window, as if crossing its end,
+        // so that no other thread will touch the file any more.
+        for (;;) {
+            Window w = window;
+            if (w == null) {
+                break;
+            }
+            long pos = w.reserved.getAndAdd(Integer.MAX_VALUE);
+            if (pos <= w.capacity) {
+                while (w.committed.get() < pos) {
+                    Thread.yield();
+                }
+                window = null;
+                closeFile(w.base + pos);
+                break;
+            }
+            while (window == w) {
+                Thread.yield();
+            }
+        }
+        // Crossing the end of the last window may have failed.
+        closeFile(resume);
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        // Unlock any lock file.
+        fileSet.release();
+        setLevel(Level.OFF);
+    }
+}
@@ -113,7 +113,9 @@ public class MemoryHandler extends Handler {
             return;
         }
         int ix = (start+count)%buffer.length;
-        buffer[ix] = record;
+        // The record stays in the buffer after we return, so make
+        // sure it is not recycled by a LogRecordPool.
+        buffer[ix] = record.retain();
         if (count < buffer.length) {
             count++;
         } else {
@@ -0,0 +1,162 @@
+package com.pancras.logging;
+
+import java.text.MessageFormat;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of parsed <tt>java.text.MessageFormat</tt> patterns,
+ * used by {@link Formatter#formatMessage} for the messages which need
+ * the full <tt>MessageFormat</tt> semantics.
+ * <p>
+ * Patterns are cached per format locale.  <tt>MessageFormat</tt> is not
+ * thread-safe, so the cache holds a parsed prototype and every call
+ * formats with a clone of it, which is much cheaper than parsing the
+ * pattern again.
+ * <p>
+ * When the cache is full a few entries are sampled and the least
+ * recently used of them is evicted.
+ * <p>
+ * The maximum number of cached patterns is set by the
+ * <tt>com.pancras.logging.Formatter.cacheSize</tt> property of the
+ * <tt>LogManager</tt> configuration (defaults to 256).  A value of 0
+ * disables the cache.  The hit and miss counts can be used to size it.
+ */
+public final class MessageFormatCache {
+    final static int DEFAULT_SIZE = 256;
+    // How many entries to look at when choosing one to evict.
+    private final static int EVICTION_SAMPLES = 8;
+
+    private static final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<Key, Entry>();
+    private static final AtomicLong clock = new AtomicLong();
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static volatile int maxSize = DEFAULT_SIZE;
+
+    private MessageFormatCache() {
+    }
+
+    /**
+     * Return the number of lookups which found a parsed pattern.
+     *
+     * @return the hit count
+     */
+    public static long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lookups which had to parse the pattern.
+     *
+     * @return the miss count
+     */
+    public static long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of patterns currently cached.
+     *
+     * @return the cache size
+     */
+    public static int getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Return the maximum number of patterns cached.
+     *
+     * @return the configured cache size
+     */
+    public static int getMaxSize() {
+        return maxSize;
+    }
+
+    // Package private method to resize the cache, called by the LogManager.
+    static void setMaxSize(int size) {
+        maxSize = Math.max(size, 0);
+        while (cache.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Format the parameters with the given pattern, like
+     * <tt>MessageFormat.format(pattern, parameters)</tt>.
+     */
+    static String format(String pattern, Object parameters[]) {
+        if (maxSize == 0) {
+            return MessageFormat.format(pattern, parameters);
+        }
+        Key key = new Key(pattern, Locale.getDefault(Locale.Category.FORMAT));
+        Entry entry = cache.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            // This throws for a bad pattern, which is then not cached.
+            entry = new Entry(new MessageFormat(pattern, key.locale));
+            if (cache.size() >= maxSize) {
+                evict();
+            }
+            Entry other = cache.putIfAbsent(key, entry);
+            if (other != null) {
+                entry = other;
+            }
+        }
+        entry.lastUsed = clock.incrementAndGet();
+        MessageFormat mf = (MessageFormat) entry.prototype.clone();
+        return mf.format(parameters, new StringBuffer(), null).toString();
+    }
+
+    // Evict the least recently used of a few entries.
+    private static void evict() {
+        Map.Entry<Key, Entry> victim = null;
+        Iterator<Map.Entry<Key, Entry>> it = cache.entrySet().iterator();
+        for (int i = 0; i < EVICTION_SAMPLES && it.hasNext(); i++) {
+            Map.Entry<Key, Entry> e = it.next();
+            if (victim == null || e.getValue().lastUsed < victim.getValue().lastUsed) {
+                victim = e;
+            }
+        }
+        if (victim != null) {
+            cache.remove(victim.getKey(), victim.getValue());
+        }
+    }
+
+    private static final class Key {
+        final String pattern;
+        final Locale locale;
+
+        Key(String pattern, Locale locale) {
+            this.pattern = pattern;
+            this.locale = locale;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return pattern.equals(other.pattern) && locale.equals(other.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            return pattern.hashCode() * 31 + locale.hashCode();
+        }
+    }
+
+    private static final class Entry {
+        final MessageFormat prototype;
+        volatile long lastUsed;
+
+        Entry(MessageFormat prototype) {
+            this.prototype = prototype;
+        }
+    }
+}
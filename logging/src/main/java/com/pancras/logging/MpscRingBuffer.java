@@ -0,0 +1,126 @@
+package com.pancras.logging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer/single-consumer queue of
+ * <tt>LogRecords</tt>.
+ * <p>
+ * Every slot carries a sequence number which tells whose turn it is
+ * to use the slot.  A producer claims a slot with a single CAS on the
+ * tail counter and then publishes the record by advancing the slot's
+ * sequence.  The consumer only reads a slot once its sequence says the
+ * record is there.
+ * <p>
+ * The head counter is also advanced with a CAS, so that an overflow
+ * policy may evict the oldest record from a producer thread while the
+ * consumer is running.
+ */
+final class MpscRingBuffer {
+    private final int mask;
+    private final AtomicReferenceArray<LogRecord> records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong(0);
+    private final AtomicLong head = new AtomicLong(0);
+
+    /**
+     * Create a ring buffer holding at least <tt>capacity</tt> records.
+     * The capacity is rounded up to the next power of two, and to at
+     * least two.
+     */
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity = " + capacity);
+        }
+        // With a single slot, a full slot and a slot free for the next
+        // lap would have the same sequence.
+        int size = 2;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        mask = size - 1;
+        records = new AtomicReferenceArray<LogRecord>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Add a record to the tail of the buffer.  May be called by any
+     * number of threads concurrently.
+     *
+     * @return false if the buffer is full
+     */
+    boolean offer(LogRecord record) {
+        for (;;) {
+            long t = tail.get();
+            int ix = (int) t & mask;
+            long diff = sequences.get(ix) - t;
+            if (diff == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    records.lazySet(ix, record);
+                    // Publishing the sequence hands the slot to the consumer.
+                    sequences.lazySet(ix, t + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                // The consumer has not yet freed this slot.
+                return false;
+            }
+            // Another producer claimed the slot first.  Try again.
+        }
+    }
+
+    /**
+     * Remove the record at the head of the buffer.  This is normally
+     * called by the single consumer thread, but producers may call it
+     * too in order to evict the oldest record.
+     *
+     * @return the record, or null if the buffer is empty
+     */
+    LogRecord poll() {
+        for (;;) {
+            long h = head.get();
+            int ix = (int) h & mask;
+            if (sequences.get(ix) != h + 1) {
+                // Either empty, or another thread just took this slot.
+                if (h == head.get()) {
+                    return null;
+                }
+                continue;
+            }
+            LogRecord record = records.get(ix);
+            if (head.compareAndSet(h, h + 1)) {
+                records.lazySet(ix, null);
+                // Hand the slot back to the producers for the next lap.
+                sequences.lazySet(ix, h + mask + 1);
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Return the number of records ever offered successfully.
+     */
+    long tailCount() {
+        return tail.get();
+    }
+
+    /**
+     * Return the number of records ever removed from the buffer.
+     */
+    long headCount() {
+        return head.get();
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
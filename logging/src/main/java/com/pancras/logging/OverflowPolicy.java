@@ -0,0 +1,222 @@
+package com.pancras.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * An <tt>OverflowPolicy</tt> decides what happens to a <tt>LogRecord</tt>
+ * that an {@link AsyncHandler} cannot queue because its buffer is full.
+ * <p>
+ * The built-in policies are selected with the
+ * <tt>&lt;handler-name&gt;.overflow</tt> property of the handler:
+ * <ul>
+ * <li> <tt>block</tt> - wait for the consumer to make room, for at most
+ *      <tt>&lt;handler-name&gt;.overflow.timeout</tt> milliseconds
+ *      (defaults to 0, meaning wait forever).  The record is dropped if
+ *      the timeout expires.  This is the default policy. </li>
+ * <li> <tt>dropNewest</tt> - drop the record that did not fit. </li>
+ * <li> <tt>dropOldest</tt> - evict the oldest queued record to make room. </li>
+ * <li> <tt>dropBelow</tt> - drop the record if its level is below
+ *      <tt>&lt;handler-name&gt;.overflow.level</tt> (defaults to
+ *      <tt>Level.WARNING</tt>), otherwise behave like <tt>block</tt>.
+ *      <tt>SEVERE</tt> and <tt>WARNING</tt> records are never dropped,
+ *      whatever the level. </li>
+ * <li> <tt>spill</tt> - format the record with the target's
+ *      <tt>Formatter</tt> and append it to the file named by
+ *      <tt>&lt;handler-name&gt;.overflow.file</tt> (defaults to
+ *      <tt>java-async-spill.log</tt> in <tt>java.io.tmpdir</tt>). </li>
+ * </ul>
+ * Any other value is taken as the name of an <tt>OverflowPolicy</tt>
+ * subclass with a public no-argument constructor.
+ * <p>
+ * Records that a policy drops are counted by the handler; see
+ * {@link AsyncHandler#getDroppedCount(Level)}.
+ */
+public abstract class OverflowPolicy {
+
+    /**
+     * Construct a new overflow policy.
+     */
+    protected OverflowPolicy() {
+    }
+
+    /**
+     * Handle a record which did not fit in the handler's buffer.
+     * <p>
+     * This method is called on the logging thread.  It may retry
+     * with {@link AsyncHandler#offer(LogRecord, long)}, divert the
+     * record elsewhere, or give up on it.
+     *
+     * @param handler  the handler whose buffer is full
+     * @param record   the record that could not be queued
+     * @return true if the record was queued or otherwise kept,
+     *         false if it was dropped
+     */
+    public abstract boolean overflow(AsyncHandler handler, LogRecord record);
+
+    /**
+     * Flush anything this policy has buffered.  This base class
+     * does nothing.
+     */
+    public void flush() {
+    }
+
+    /**
+     * Release any resources held by this policy.  Called when the
+     * handler is closed.  This base class does nothing.
+     */
+    public void close() {
+    }
+
+    // Package private factory for the built-in policies.  Unknown or
+    // broken policy names fall back to the default (blocking) policy.
+    static OverflowPolicy forHandler(LogManager manager, String cname) {
+        String name = manager.getStringProperty(cname + ".overflow", "block");
+        long timeout = manager.getIntProperty(cname + ".overflow.timeout", 0);
+        if (name.equals("block")) {
+            return new Block(timeout);
+        } else if (name.equals("dropNewest")) {
+            return new DropNewest();
+        } else if (name.equals("dropOldest")) {
+            return new DropOldest();
+        } else if (name.equals("dropBelow")) {
+            Level threshold = manager.getLevelProperty(cname + ".overflow.level", Level.WARNING);
+            return new DropBelow(threshold, timeout);
+        } else if (name.equals("spill")) {
+            String fname = manager.getStringProperty(cname + ".overflow.file", null);
+            File file = (fname != null) ? new File(fname)
+                    : new File(System.getProperty("java.io.tmpdir"), "java-async-spill.log");
+            return new Spill(file);
+        }
+        try {
+            Class<?> clz = ClassLoader.getSystemClassLoader().loadClass(name);
+            return (OverflowPolicy) clz.newInstance();
+        } catch (Exception ex) {
+            System.err.println("Can't load overflow policy \"" + name + "\"");
+            System.err.println("" + ex);
+        }
+        return new Block(0);
+    }
+
+    // Wait for room, forever or up to a timeout.
+    static class Block extends OverflowPolicy {
+        private final long timeout;
+
+        Block(long timeout) {
+            this.timeout = timeout > 0 ? timeout : -1;
+        }
+
+        @Override
+        public boolean overflow(AsyncHandler handler, LogRecord record) {
+            return handler.offer(record, timeout);
+        }
+    }
+
+    // Drop the record that did not fit.
+    static class DropNewest extends OverflowPolicy {
+        @Override
+        public boolean overflow(AsyncHandler handler, LogRecord record) {
+            return false;
+        }
+    }
+
+    // Evict queued records, oldest first, until the new one fits.
+    static class DropOldest extends OverflowPolicy {
+        @Override
+        public boolean overflow(AsyncHandler handler, LogRecord record) {
+            while (!handler.offer(record, 0)) {
+                LogRecord oldest = handler.evictOldest();
+                if (oldest != null) {
+                    handler.countDropped(oldest);
+                } else if (!handler.isLoggable(record)) {
+                    // The handler has been closed under us.
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // Drop records below a threshold, block for the others.
+    static class DropBelow extends OverflowPolicy {
+        private final int threshold;
+        private final long timeout;
+
+        DropBelow(Level threshold, long timeout) {
+            // SEVERE and WARNING records are always kept.
+            this.threshold = Math.min(threshold.intValue(), Level.WARNING.intValue());
+            this.timeout = timeout > 0 ? timeout : -1;
+        }
+
+        @Override
+        public boolean overflow(AsyncHandler handler, LogRecord record) {
+            if (record.getLevel().intValue() < threshold) {
+                return false;
+            }
+            return handler.offer(record, timeout);
+        }
+    }
+
+    // Append the formatted record to a local file.
+    static class Spill extends OverflowPolicy {
+        private final File file;
+        private Writer writer;
+        private boolean failed;
+
+        Spill(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized boolean overflow(AsyncHandler handler, LogRecord record) {
+            if (failed) {
+                return false;
+            }
+            Formatter formatter = handler.getTarget().getFormatter();
+            if (formatter == null) {
+                formatter = new SimpleFormatter();
+            }
+            try {
+                if (writer == null) {
+                    String encoding = handler.getTarget().getEncoding();
+                    FileOutputStream fout = new FileOutputStream(file, true);
+                    writer = (encoding == null) ? new OutputStreamWriter(fout)
+                            : new OutputStreamWriter(fout, encoding);
+                }
+                writer.write(formatter.format(record));
+                return true;
+            } catch (Exception ex) {
+                // Don't try again: every record would pay for the failure.
+                failed = true;
+                handler.reportError("Can't spill to " + file, ex, ErrorManager.WRITE_FAILURE);
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException ex) {
+                    // Drop through.
+                }
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    // Problems closing the stream.  Punt.
+                }
+                writer = null;
+            }
+        }
+    }
+}
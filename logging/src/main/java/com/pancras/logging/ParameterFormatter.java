@@ -0,0 +1,210 @@
+package com.pancras.logging;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Single pass substitution of <tt>{}</tt> and <tt>{n}</tt> placeholders
+ * in log messages.
+ * <p>
+ * This handles the message patterns seen in practice without the cost
+ * of <tt>java.text.MessageFormat</tt>, which parses the pattern again on
+ * every call.  Arguments are rendered the way <tt>MessageFormat</tt>
+ * renders them, so for the patterns accepted here the results are the
+ * same:
+ * <ul>
+ * <li> <tt>{n}</tt> is replaced by parameter <tt>n</tt>, or left as it
+ *      is if there is no such parameter. </li>
+ * <li> <tt>{}</tt> is replaced by the next parameter not yet used by a
+ *      <tt>{}</tt>, or left as it is if there is none. </li>
+ * <li> <tt>null</tt> is rendered as <tt>"null"</tt>, a <tt>Number</tt>
+ *      with the default <tt>NumberFormat</tt> for the format locale,
+ *      anything else with <tt>toString()</tt>. </li>
+ * <li> A pattern with neither a <tt>{}</tt> nor a placeholder starting
+ *      with <tt>{0</tt> to <tt>{3</tt> is returned as it is, as
+ *      <tt>Formatter.formatMessage</tt> always did. </li>
+ * </ul>
+ * <tt>MessageFormat</tt> rejects <tt>{}</tt>, so patterns using it used
+ * to be left as they were; they are now substituted.
+ * Patterns using quotes, format types such as <tt>{0,number}</tt>, or
+ * <tt>Date</tt> parameters are not handled here; {@link #format} returns
+ * null for them and the caller should use <tt>MessageFormat</tt>.
+ */
+final class ParameterFormatter {
+    // Builders which grew beyond this are not kept for reuse.
+    private final static int MAX_CACHED_CAPACITY = 8192;
+
+    // Per-thread scratch space.  A holder is marked busy while in use,
+    // so that a parameter whose toString() itself logs gets its own.
+    private static final ThreadLocal<ParameterFormatter> scratch = new ThreadLocal<ParameterFormatter>() {
+        @Override
+        protected ParameterFormatter initialValue() {
+            return new ParameterFormatter();
+        }
+    };
+
+    private StringBuilder buffer = new StringBuilder(256);
+    private boolean busy;
+    private Locale numberLocale;
+    private NumberFormat numberFormat;
+
+    private ParameterFormatter() {
+    }
+
+    /**
+     * Substitute the parameters into the given pattern.
+     *
+     * @param pattern     the message pattern
+     * @param parameters  the parameters, not null
+     * @return the formatted message, the pattern itself if it is not
+     *         to be formatted, or null if the pattern or the parameters
+     *         need <tt>MessageFormat</tt>
+     */
+    static String format(String pattern, Object parameters[]) {
+        return format(pattern, parameters, null);
+    }
+
+    /**
+     * Substitute the inline parameters of a record into the given
+     * pattern.  Primitive parameters are rendered without boxing them.
+     *
+     * @param pattern  the message pattern
+     * @param record   the record, with inline parameters
+     * @return the formatted message, the pattern itself if it is not
+     *         to be formatted, or null if the pattern or the parameters
+     *         need <tt>MessageFormat</tt>
+     */
+    static String format(String pattern, LogRecord record) {
+        return format(pattern, null, record);
+    }
+
+    // Substitute either the given parameters or the inline parameters
+    // of the given record.
+    private static String format(String pattern, Object parameters[], LogRecord record) {
+        int brace = pattern.indexOf('{');
+        if (brace < 0) {
+            return pattern;
+        }
+        if (pattern.indexOf('\'') >= 0) {
+            return null;
+        }
+        ParameterFormatter pf = scratch.get();
+        if (pf.busy) {
+            pf = new ParameterFormatter();
+        }
+        pf.busy = true;
+        try {
+            return pf.substitute(pattern, brace, parameters, record);
+        } finally {
+            pf.busy = false;
+            if (pf.buffer.capacity() > MAX_CACHED_CAPACITY) {
+                pf.buffer = new StringBuilder(256);
+            }
+        }
+    }
+
+    // Substitute the parameters, starting at the first '{'.
+    private String substitute(String pattern, int brace, Object parameters[], LogRecord record) {
+        int count = parameters != null ? parameters.length : record.getInlineCount();
+        StringBuilder sb = buffer;
+        sb.setLength(0);
+        int len = pattern.length();
+        int next = 0;       // the next parameter for "{}"
+        int copied = 0;     // the pattern is copied up to here
+        // Whether there is a "{}", or a "{0" to "{3" for which
+        // formatMessage has always formatted the pattern.
+        boolean format = false;
+        while (brace >= 0) {
+            // Parse the argument index, if any.
+            int ix = brace + 1;
+            int arg = 0;
+            while (ix < len) {
+                char c = pattern.charAt(ix);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                arg = arg * 10 + (c - '0');
+                if (arg < 0) {
+                    // Overflow; let MessageFormat report it.
+                    return null;
+                }
+                ix++;
+            }
+            if (ix >= len || pattern.charAt(ix) != '}') {
+                // "{0,number}", an unmatched '{' or the like.
+                return null;
+            }
+            if (ix == brace + 1) {
+                arg = next++;
+                format = true;
+            } else if (pattern.charAt(brace + 1) <= '3') {
+                format = true;
+            }
+            if (arg < count) {
+                if (parameters == null && record.getInlineKind(arg) != LogRecord.OBJECT) {
+                    sb.append(pattern, copied, brace);
+                    appendPrimitive(sb, record.getInlineKind(arg), record.getInlineBits());
+                } else {
+                    Object param = parameters != null ? parameters[arg]
+                                                      : record.getInlineParameter(arg);
+                    if (param instanceof java.util.Date) {
+                        return null;
+                    }
+                    sb.append(pattern, copied, brace);
+                    appendParameter(sb, param);
+                }
+                copied = ix + 1;
+            }
+            brace = pattern.indexOf('{', ix + 1);
+        }
+        if (!format) {
+            return pattern;
+        }
+        sb.append(pattern, copied, len);
+        return sb.toString();
+    }
+
+    // Append a parameter the way MessageFormat renders it.
+    private void appendParameter(StringBuilder sb, Object param) {
+        if (param == null) {
+            sb.append("null");
+        } else if (param instanceof String) {
+            sb.append((String) param);
+        } else if (param instanceof Number) {
+            sb.append(numberFormat().format(param));
+        } else {
+            sb.append(param.toString());
+        }
+    }
+
+    // Append a primitive parameter the way MessageFormat renders it
+    // once boxed.
+    private void appendPrimitive(StringBuilder sb, int kind, long bits) {
+        switch (kind) {
+            case LogRecord.INT:
+            case LogRecord.LONG:
+                sb.append(numberFormat().format(bits));
+                break;
+            case LogRecord.DOUBLE:
+                sb.append(numberFormat().format(Double.longBitsToDouble(bits)));
+                break;
+            case LogRecord.BOOLEAN:
+                sb.append(bits != 0);
+                break;
+            default:
+                sb.append((char) bits);
+                break;
+        }
+    }
+
+    // NumberFormat is expensive to create, so keep one per thread for
+    // the current format locale.
+    private NumberFormat numberFormat() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (numberFormat == null || !locale.equals(numberLocale)) {
+            numberFormat = NumberFormat.getInstance(locale);
+            numberLocale = locale;
+        }
+        return numberFormat;
+    }
+}
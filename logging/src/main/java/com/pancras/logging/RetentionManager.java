@@ -0,0 +1,394 @@
+package com.pancras.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Background service keeping the log files of one or more directories
+ * within a total size and a maximum age.
+ * <p>
+ * The directories are scanned on a background thread, a bounded number
+ * of files at a time, and the size and age of every log file are kept
+ * from one pass to the next.  After each full pass the oldest files are
+ * deleted, or compressed, until the budgets are met.  The directories
+ * are never listed by the threads which log.
+ * <p>
+ * The file being written by a handler of this VM is never deleted,
+ * and the files of a handler are deleted without racing with its
+ * rotation.  Files written by other processes are not protected.
+ * <p>
+ * The service is started by naming this class in the <tt>config</tt>
+ * property of the <tt>LogManager</tt> configuration; reading the
+ * configuration again replaces it.
+ * <p>
+ * <b>Configuration:</b>
+ * The service is configured using the following <tt>LogManager</tt>
+ * configuration properties, where durations are a number of seconds, or
+ * a number followed by one of the units <tt>s</tt>, <tt>m</tt>,
+ * <tt>h</tt> or <tt>d</tt>, as in <tt>7d</tt>.
+ * If properties are not defined
+ * (or have invalid values) then the specified default values are used.
+ * <ul>
+ * <li>   com.pancras.logging.RetentionManager.directories
+ *        the directories to look after, separated by commas or white
+ *        space (defaults to none, which disables the service). </li>
+ * <li>   com.pancras.logging.RetentionManager.include
+ *        a regular expression the names of the files to look after
+ *        must match (defaults to names ending with <tt>.log</tt>, which
+ *        may be followed by generation and unique numbers and by
+ *        <tt>.gz</tt>, as in <tt>java0.log</tt>, <tt>app.log.3</tt> or
+ *        <tt>app.log.3.gz</tt>; set it for handler patterns which do
+ *        not end with <tt>.log</tt>). </li>
+ * <li>   com.pancras.logging.RetentionManager.maxBytes
+ *        the total size of the files, across all the directories, with
+ *        an optional k, m, g or t suffix (defaults to no limit). </li>
+ * <li>   com.pancras.logging.RetentionManager.maxAge
+ *        the age, since they were last written, past which files are
+ *        deleted (defaults to no limit). </li>
+ * <li>   com.pancras.logging.RetentionManager.compressAge
+ *        the age past which files are compressed with gzip (defaults
+ *        to never). </li>
+ * <li>   com.pancras.logging.RetentionManager.interval
+ *        the time between two passes over the directories (defaults to
+ *        one minute). </li>
+ * <li>   com.pancras.logging.RetentionManager.batch
+ *        the number of files looked at in one go (defaults to 256). </li>
+ * </ul>
+ */
+public class RetentionManager {
+    private final static String PREFIX = RetentionManager.class.getName();
+    private final static long DEFAULT_INTERVAL = 60 * 1000;
+    private final static int DEFAULT_BATCH = 256;
+    // The names the usual handler patterns produce, without the .lck,
+    // .current and .tmp files next to them.
+    private final static Pattern DEFAULT_INCLUDE = Pattern.compile(".*\\.log(\\.\\d+)*(\\.gz)?");
+    // The pause between two batches of one pass.
+    private final static long BATCH_DELAY = 10;
+
+    // The service in use, replaced on each reading of the configuration.
+    private static RetentionManager current;
+
+    private final List<Path> directories = new ArrayList<Path>();
+    private Pattern include = DEFAULT_INCLUDE;
+    private long maxBytes;      // zero => no limit.
+    private long maxAge;        // zero => no limit.
+    private long compressAge;   // zero => never.
+    private long interval;
+    private int batch;
+
+    // The files known from the previous passes, by path.  Only used on
+    // the retention thread.
+    private final Map<Path,Entry> entries = new HashMap<Path,Entry>();
+    // The state of the pass under way.
+    private int directory;
+    private DirectoryStream<Path> stream;
+    private Iterator<Path> iterator;
+    private final Set<Path> seen = new HashSet<Path>();
+
+    private ScheduledExecutorService executor;
+    private volatile boolean stopped;
+
+    // A log file, as last seen.
+    private static final class Entry {
+        Path path;
+        long size;
+        long modified;
+
+        Entry(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * Start the service, configured from <tt>LogManager</tt> properties.
+     * Any service started before is stopped.
+     */
+    public RetentionManager() {
+        configure();
+        synchronized (RetentionManager.class) {
+            if (current != null) {
+                current.stop();
+            }
+            current = this;
+        }
+        if (directories.isEmpty() || (maxBytes == 0 && maxAge == 0 && compressAge == 0)) {
+            return;
+        }
+        executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            //@Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Log retention");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        schedule(0);
+    }
+
+    // Private method to configure the service from LogManager
+    // properties and/or default values as specified in the class
+    // javadoc.
+    private void configure() {
+        LogManager manager = LogManager.getLogManager();
+        String names = manager.getStringProperty(PREFIX + ".directories", "");
+        for (String name : names.split("[,\\s]+")) {
+            if (name.length() > 0) {
+                directories.add(Paths.get(name));
+            }
+        }
+        String regex = manager.getStringProperty(PREFIX + ".include", null);
+        if (regex != null) {
+            try {
+                include = Pattern.compile(regex);
+            } catch (Exception ex) {
+                System.err.println("Bad value for " + PREFIX + ".include: " + regex);
+                directories.clear();
+            }
+        }
+        maxBytes = Math.max(0, manager.getLongProperty(PREFIX + ".maxBytes", 0));
+        maxAge = getDuration(manager, PREFIX + ".maxAge", 0);
+        compressAge = getDuration(manager, PREFIX + ".compressAge", 0);
+        interval = getDuration(manager, PREFIX + ".interval", DEFAULT_INTERVAL);
+        if (interval <= 0) {
+            interval = DEFAULT_INTERVAL;
+        }
+        batch = manager.getIntProperty(PREFIX + ".batch", DEFAULT_BATCH);
+        if (batch <= 0) {
+            batch = DEFAULT_BATCH;
+        }
+    }
+
+    // Get a duration property, in milliseconds.
+    // If the property is not defined or cannot be parsed
+    // we return the given default value.
+    private static long getDuration(LogManager manager, String name, long defaultValue) {
+        String val = manager.getStringProperty(name, null);
+        if (val == null || val.length() == 0) {
+            return defaultValue;
+        }
+        long unit;
+        switch (Character.toLowerCase(val.charAt(val.length() - 1))) {
+            case 'm': unit = 60 * 1000; break;
+            case 'h': unit = 60 * 60 * 1000; break;
+            case 'd': unit = 24 * 60 * 60 * 1000; break;
+            default: unit = 1000; break;
+        }
+        if (!Character.isDigit(val.charAt(val.length() - 1))) {
+            val = val.substring(0, val.length() - 1).trim();
+        }
+        try {
+            long value = Long.parseLong(val);
+            if (value < 0 || value > Long.MAX_VALUE / unit) {
+                return defaultValue;
+            }
+            return value * unit;
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    // Stop the service, letting any batch under way finish.
+    void stop() {
+        stopped = true;
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private void schedule(long delay) {
+        if (stopped) {
+            return;
+        }
+        try {
+            executor.schedule(new Runnable() {
+                //@Override
+                public void run() {
+                    step();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (Exception ex) {
+            // Stopped meanwhile.
+        }
+    }
+
+    // Look at the next batch of files, and at the end of a pass
+    // enforce the budgets.
+    private void step() {
+        if (stopped) {
+            closeStream();
+            return;
+        }
+        try {
+            if (scan()) {
+                // Forget the files which have gone.
+                entries.keySet().retainAll(seen);
+                seen.clear();
+                enforce();
+                schedule(interval);
+            } else {
+                schedule(BATCH_DELAY);
+            }
+        } catch (RuntimeException ex) {
+            // Keep going with the next pass.
+            closeStream();
+            seen.clear();
+            directory = 0;
+            schedule(interval);
+        }
+    }
+
+    // Look at up to one batch of files.  Return true at the end of a pass.
+    private boolean scan() {
+        int n = 0;
+        while (n < batch) {
+            if (iterator == null) {
+                if (directory == directories.size()) {
+                    directory = 0;
+                    return true;
+                }
+                try {
+                    stream = Files.newDirectoryStream(directories.get(directory++));
+                    iterator = stream.iterator();
+                } catch (IOException ex) {
+                    // A directory which does not exist (yet).
+                    continue;
+                }
+            }
+            try {
+                while (n < batch && iterator.hasNext()) {
+                    look(iterator.next());
+                    n++;
+                }
+            } catch (DirectoryIteratorException ex) {
+                // Give up on this directory for this pass.
+                closeStream();
+                continue;
+            }
+            if (n < batch) {
+                closeStream();
+            }
+        }
+        return false;
+    }
+
+    private void closeStream() {
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                // Punt.
+            }
+        }
+        stream = null;
+        iterator = null;
+    }
+
+    // Record the size and age of a file, if it is a log file.
+    private void look(Path path) {
+        String name = path.getFileName().toString();
+        if (!include.matcher(name).matches()) {
+            return;
+        }
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return;
+        }
+        if (!attributes.isRegularFile()) {
+            return;
+        }
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            entry = new Entry(path);
+            entries.put(path, entry);
+        }
+        entry.size = attributes.size();
+        entry.modified = attributes.lastModifiedTime().toMillis();
+        seen.add(path);
+    }
+
+    // Delete and compress the oldest files to meet the budgets.
+    private void enforce() {
+        List<Entry> files = new ArrayList<Entry>(entries.values());
+        Collections.sort(files, new Comparator<Entry>() {
+            //@Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.modified < e2.modified ? -1 : (e1.modified == e2.modified ? 0 : 1);
+            }
+        });
+        long now = System.currentTimeMillis();
+        long total = 0;
+        for (Iterator<Entry> it = files.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (maxAge > 0 && now - entry.modified > maxAge && delete(entry)) {
+                it.remove();
+            } else {
+                total += entry.size;
+            }
+        }
+        if (compressAge > 0) {
+            for (Entry entry : files) {
+                if (stopped || now - entry.modified <= compressAge) {
+                    break;
+                }
+                if (!entry.path.toString().endsWith(".gz")) {
+                    total -= compress(entry);
+                }
+            }
+        }
+        if (maxBytes > 0) {
+            for (Iterator<Entry> it = files.iterator(); it.hasNext() && total > maxBytes; ) {
+                Entry entry = it.next();
+                if (delete(entry)) {
+                    total -= entry.size;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private boolean delete(Entry entry) {
+        if (LogFileSet.deleteFile(entry.path.toFile())) {
+            entries.remove(entry.path);
+            return true;
+        }
+        return false;
+    }
+
+    // Compress a file, returning the number of bytes saved.
+    private long compress(Entry entry) {
+        File gz = LogFileSet.compressFile(entry.path.toFile());
+        if (gz == null) {
+            return 0;
+        }
+        // The compressed file keeps the time the file was last written.
+        entries.remove(entry.path);
+        entry.path = gz.toPath();
+        entries.put(entry.path, entry);
+        long saved = entry.size - gz.length();
+        entry.size = gz.length();
+        return saved;
+    }
+}
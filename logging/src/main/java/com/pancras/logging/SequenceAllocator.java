@@ -0,0 +1,108 @@
+package com.pancras.logging;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocator of <tt>LogRecord</tt> sequence numbers.
+ * <p>
+ * By default every record takes the next number of a single counter, so
+ * that sequence numbers follow the order in which records were created.
+ * When the <tt>com.pancras.logging.LogRecord.sequenceBlock</tt> property
+ * of the <tt>LogManager</tt> configuration is set to a number greater than
+ * one, each thread takes blocks of that many numbers from the counter
+ * instead and numbers its records from its own block, which keeps threads
+ * from contending on the counter.  Sequence numbers are then still
+ * unique, and increasing for the records of one thread, but no longer
+ * ordered between threads.
+ * <p>
+ * Consumers which put records from several threads back in order should
+ * use {@link #ORDER} or {@link #sort}, which order records by time first
+ * and only then by sequence number.
+ */
+public final class SequenceAllocator {
+    private static final AtomicLong counter = new AtomicLong(0);
+
+    // The size of the blocks, or 1 to use the counter directly.
+    private static volatile int blockSize = 1;
+    // Changes with the block size, so that threads drop their blocks.
+    private static volatile int epoch;
+
+    private static final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+        @Override
+        protected Block initialValue() {
+            return new Block();
+        }
+    };
+
+    // The numbers left to a thread: from next (included) to end
+    // (excluded).
+    private static final class Block {
+        long next;
+        long end;
+        int epoch;
+    }
+
+    /**
+     * Orders records by event time, then by sequence number.  For the
+     * records of one thread this is the order in which they were
+     * created; records of different threads created in the same
+     * millisecond may come in any order.
+     */
+    public static final Comparator<LogRecord> ORDER = new Comparator<LogRecord>() {
+        //@Override
+        public int compare(LogRecord r1, LogRecord r2) {
+            long m1 = r1.getMillis();
+            long m2 = r2.getMillis();
+            if (m1 != m2) {
+                return m1 < m2 ? -1 : 1;
+            }
+            long s1 = r1.getSequenceNumber();
+            long s2 = r2.getSequenceNumber();
+            return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+        }
+    };
+
+    private SequenceAllocator() {
+    }
+
+    /**
+     * Sort records, possibly merged from several sources, into the
+     * order given by {@link #ORDER}.
+     *
+     * @param records  the records to sort
+     */
+    public static void sort(List<LogRecord> records) {
+        Collections.sort(records, ORDER);
+    }
+
+    // Package private method used by the LogManager to set the block
+    // size; one or less means no blocks.
+    static synchronized void setBlockSize(int size) {
+        size = Math.max(1, size);
+        if (size != blockSize) {
+            blockSize = size;
+            epoch++;
+        }
+    }
+
+    // Package private method to get the next sequence number for a
+    // record created by the current thread.
+    static long next() {
+        int size = blockSize;
+        if (size == 1) {
+            return counter.getAndIncrement();
+        }
+        Block block = blocks.get();
+        // A block taken before the block size last changed may be
+        // below numbers this thread has used since.
+        if (block.next == block.end || block.epoch != epoch) {
+            block.epoch = epoch;
+            block.next = counter.getAndAdd(size);
+            block.end = block.next + size;
+        }
+        return block.next++;
+    }
+}
@@ -0,0 +1,48 @@
+package com.pancras.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * An <tt>Encoder</tt> producing the same output as {@link SimpleFormatter},
+ * using the same <tt>java.util.logging.SimpleFormatter.format</tt>
+ * format string.
+ * <p>
+ * The constant parts of the output, the rendered timestamps and the
+ * logger and level names are encoded once and then copied as bytes.
+ */
+public class SimpleEncoder extends Encoder {
+    // Only used for formatMessage, which holds no state, and for its
+    // inferCaller setting.
+    private final SimpleFormatter messages = new SimpleFormatter();
+
+    /**
+     * Create a new <tt>SimpleEncoder</tt>.
+     */
+    public SimpleEncoder() {
+    }
+
+    @Override
+    public ByteBuffer encode(LogRecord record, Charset charset, ByteBuffer buffer) {
+        String source = SimpleFormatter.source(record, messages.inferCaller);
+        String message = messages.formatMessage(record);
+        String throwable = SimpleFormatter.thrownText(record);
+        if (SimpleFormatter.pattern != null) {
+            return SimpleFormatter.pattern.encode(buffer, charset,
+                                                  record.getMillis(),
+                                                  source,
+                                                  record.getLoggerName(),
+                                                  record.getLevel().getLocalizedLevelName(),
+                                                  message,
+                                                  throwable);
+        }
+        return put(buffer, String.format(SimpleFormatter.format,
+                                         new Date(record.getMillis()),
+                                         source,
+                                         record.getLoggerName(),
+                                         record.getLevel().getLocalizedLevelName(),
+                                         message,
+                                         throwable), charset);
+    }
+}
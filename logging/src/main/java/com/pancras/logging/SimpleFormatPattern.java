@@ -0,0 +1,337 @@
+package com.pancras.logging;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A <tt>SimpleFormatter</tt> format string compiled into a list of
+ * pieces, so that it need not be parsed again for every record.
+ * <p>
+ * The format string takes the same six arguments as
+ * <tt>SimpleFormatter.format</tt>: the date, the source, the logger
+ * name, the level, the message and the thrown text.  Each run of date
+ * and time conversions is rendered once and then reused until the
+ * clock moves on to the next second, or the next millisecond for the
+ * conversions which show milliseconds or nanoseconds.  Plain
+ * <tt>%s</tt> conversions are appended directly; everything else is
+ * rendered with <tt>String.format</tt>.
+ * <p>
+ * A pattern can also encode straight into bytes for a
+ * {@link SimpleEncoder}.  The literal text, the rendered dates and the
+ * logger and level names are then encoded only once per charset.
+ * <p>
+ * Instances are immutable apart from the date caches, which are
+ * swapped atomically, so they may be used by many threads at once.
+ */
+final class SimpleFormatPattern {
+    // Same syntax as java.util.Formatter.
+    private static final Pattern SPEC =
+            Pattern.compile("%(\\d+\\$)?([-#+ 0,(\\<]*)?(\\d+)?(\\.\\d+)?([tT])?([a-zA-Z%])");
+
+    private final Piece pieces[];
+
+    private SimpleFormatPattern(Piece pieces[]) {
+        this.pieces = pieces;
+    }
+
+    /**
+     * Compile a format string.
+     *
+     * @return the compiled pattern, or null if the format string
+     *         uses something this class doesn't handle; the caller
+     *         should then use <tt>String.format</tt>.
+     */
+    static SimpleFormatPattern compile(String format) {
+        List<Piece> pieces = new ArrayList<Piece>();
+        StringBuilder literal = new StringBuilder();
+        DateRun run = null;
+        Matcher m = SPEC.matcher(format);
+        int ordinary = 0;
+        int last = 0;
+        int pos = 0;
+        while (pos < format.length()) {
+            int pct = format.indexOf('%', pos);
+            if (pct < 0) {
+                pct = format.length();
+            }
+            String text = format.substring(pos, pct);
+            if (pct == format.length()) {
+                literal.append(text);
+                break;
+            }
+            if (!m.find(pct) || m.start() != pct) {
+                return null;
+            }
+            pos = m.end();
+            String flags = m.group(2) == null ? "" : m.group(2);
+            char conv = m.group(6).charAt(0);
+            boolean plain = flags.length() == 0 && m.group(3) == null && m.group(4) == null;
+            if (m.group(5) == null && (conv == '%' || conv == 'n')) {
+                if (!plain) {
+                    return null;
+                }
+                text += (conv == '%') ? "%" : System.lineSeparator();
+                if (run != null) {
+                    run.appendText(text);
+                } else {
+                    literal.append(text);
+                }
+                continue;
+            }
+
+            // Work out which argument the conversion refers to.
+            int index;
+            if (m.group(1) != null) {
+                index = Integer.parseInt(m.group(1).substring(0, m.group(1).length() - 1));
+            } else if (flags.indexOf('<') >= 0) {
+                index = last;
+            } else {
+                index = ++ordinary;
+            }
+            if (index < 1 || index > 6) {
+                return null;
+            }
+            last = index;
+            flags = flags.replace("<", "");
+            String spec = "%1$" + flags + (m.group(3) == null ? "" : m.group(3))
+                    + (m.group(4) == null ? "" : m.group(4))
+                    + (m.group(5) == null ? "" : m.group(5)) + conv;
+
+            if (index == 1 && m.group(5) != null) {
+                // A date or time conversion: part of a cached run.
+                if (run == null) {
+                    literal.append(text);
+                    flushLiteral(pieces, literal);
+                    run = new DateRun();
+                    pieces.add(run);
+                } else {
+                    run.appendText(text);
+                }
+                run.appendSpec(spec);
+                if ("LNQ".indexOf(conv) >= 0) {
+                    run.precise = true;
+                }
+                continue;
+            }
+            if (run != null) {
+                literal.append(run.removeTrailingLiteral());
+                run = null;
+            }
+            literal.append(text);
+            flushLiteral(pieces, literal);
+            if (index > 1 && conv == 's' && plain) {
+                pieces.add(new Argument(index));
+            } else {
+                pieces.add(new Formatted(index, spec));
+            }
+        }
+        flushLiteral(pieces, literal);
+        for (Piece piece : pieces) {
+            if (piece instanceof DateRun) {
+                ((DateRun) piece).freeze();
+            }
+        }
+        return new SimpleFormatPattern(pieces.toArray(new Piece[pieces.size()]));
+    }
+
+    private static void flushLiteral(List<Piece> pieces, StringBuilder literal) {
+        if (literal.length() > 0) {
+            pieces.add(new Literal(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Format a record's fields, like <tt>String.format</tt> with the
+     * compiled format string and a <tt>Date</tt> for the given time.
+     */
+    String format(long millis, String source, String logger, String level,
+                  String message, String thrown) {
+        Object args[] = { null, source, logger, level, message, thrown };
+        StringBuilder sb = new StringBuilder(128);
+        for (Piece piece : pieces) {
+            piece.appendTo(sb, millis, args);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Encode a record's fields, like {@link #format} followed by
+     * encoding the result with the given charset.
+     */
+    ByteBuffer encode(ByteBuffer buffer, Charset charset, long millis, String source,
+                      String logger, String level, String message, String thrown) {
+        Object args[] = { null, source, logger, level, message, thrown };
+        for (Piece piece : pieces) {
+            buffer = piece.encodeTo(buffer, charset, millis, args);
+        }
+        return buffer;
+    }
+
+    private static abstract class Piece {
+        // args[0] is not set; the date is created from millis as needed.
+        abstract void appendTo(StringBuilder sb, long millis, Object args[]);
+
+        ByteBuffer encodeTo(ByteBuffer buffer, Charset charset, long millis, Object args[]) {
+            StringBuilder sb = new StringBuilder();
+            appendTo(sb, millis, args);
+            return Encoder.put(buffer, sb.toString(), charset);
+        }
+    }
+
+    // Text encoded with a given charset.
+    private static final class Encoded {
+        final Charset charset;
+        final byte bytes[];
+
+        Encoded(Charset charset, byte bytes[]) {
+            this.charset = charset;
+            this.bytes = bytes;
+        }
+    }
+
+    private static final class Literal extends Piece {
+        private final String text;
+        private volatile Encoded encoded;
+
+        Literal(String text) {
+            this.text = text;
+        }
+
+        @Override
+        void appendTo(StringBuilder sb, long millis, Object args[]) {
+            sb.append(text);
+        }
+
+        @Override
+        ByteBuffer encodeTo(ByteBuffer buffer, Charset charset, long millis, Object args[]) {
+            Encoded e = encoded;
+            if (e == null || !e.charset.equals(charset)) {
+                e = new Encoded(charset, text.getBytes(charset));
+                encoded = e;
+            }
+            buffer = Encoder.ensureRemaining(buffer, e.bytes.length);
+            return buffer.put(e.bytes);
+        }
+    }
+
+    // A plain %s of one of the string arguments.
+    private static final class Argument extends Piece {
+        private final int index;
+
+        Argument(int index) {
+            this.index = index;
+        }
+
+        @Override
+        void appendTo(StringBuilder sb, long millis, Object args[]) {
+            sb.append((String) args[index - 1]);
+        }
+
+        @Override
+        ByteBuffer encodeTo(ByteBuffer buffer, Charset charset, long millis, Object args[]) {
+            String arg = (String) args[index - 1];
+            if (index == 3 || index == 4) {
+                // The logger and level names recur.
+                return Encoder.putConstant(buffer, arg, charset);
+            }
+            return Encoder.put(buffer, arg, charset);
+        }
+    }
+
+    // Any other single conversion, rendered by String.format.
+    private static final class Formatted extends Piece {
+        private final int index;
+        private final String spec;
+
+        Formatted(int index, String spec) {
+            this.index = index;
+            this.spec = spec;
+        }
+
+        @Override
+        void appendTo(StringBuilder sb, long millis, Object args[]) {
+            Object arg = (index == 1) ? new Date(millis) : args[index - 1];
+            sb.append(String.format(spec, arg));
+        }
+    }
+
+    // A run of date and time conversions and the text between them.
+    private static final class DateRun extends Piece {
+        private final StringBuilder pattern = new StringBuilder();
+        private int specEnd;
+        private String format;
+        boolean precise;
+        private volatile Rendered cached;
+
+        void appendText(String text) {
+            pattern.append(text.replace("%", "%%"));
+        }
+
+        void appendSpec(String spec) {
+            pattern.append(spec);
+            specEnd = pattern.length();
+        }
+
+        // Return the text after the last conversion, which is not
+        // worth caching, and drop it from this run.
+        String removeTrailingLiteral() {
+            String tail = pattern.substring(specEnd).replace("%%", "%");
+            pattern.setLength(specEnd);
+            return tail;
+        }
+
+        void freeze() {
+            format = pattern.toString();
+        }
+
+        @Override
+        void appendTo(StringBuilder sb, long millis, Object args[]) {
+            sb.append(rendered(millis).text);
+        }
+
+        @Override
+        ByteBuffer encodeTo(ByteBuffer buffer, Charset charset, long millis, Object args[]) {
+            Rendered r = rendered(millis);
+            Encoded e = r.encoded;
+            if (e == null || !e.charset.equals(charset)) {
+                e = new Encoded(charset, r.text.getBytes(charset));
+                r.encoded = e;
+            }
+            buffer = Encoder.ensureRemaining(buffer, e.bytes.length);
+            return buffer.put(e.bytes);
+        }
+
+        // Return the run rendered for the given time, from the cache
+        // if the clock hasn't moved on since.
+        private Rendered rendered(long millis) {
+            long key = precise ? millis : Math.floorDiv(millis, 1000L);
+            Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+            Rendered r = cached;
+            if (r == null || r.key != key || r.locale != locale) {
+                r = new Rendered(key, locale, String.format(locale, format, new Date(millis)));
+                cached = r;
+            }
+            return r;
+        }
+    }
+
+    private static final class Rendered {
+        final long key;
+        final Locale locale;
+        final String text;
+        volatile Encoded encoded;
+
+        Rendered(long key, Locale locale, String text) {
+            this.key = key;
+            this.locale = locale;
+            this.text = text;
+        }
+    }
+}
@@ -50,6 +50,14 @@ import sun.util.logging.LoggingSupport;
  * If this property is not defined or the given format string
  * is {@linkplain java.util.IllegalFormatException illegal},
  * the default format is implementation-specific.
+ * <p>
+ * The {@code com.pancras.logging.SimpleFormatter.inferCaller} property
+ * (for a subclass, its own class name followed by
+ * {@code .inferCaller}) tells how the source of a record is found when
+ * it was not given by the logging call: {@code true} (the default) to
+ * walk the stack, which is done only once for each {@link LogSite}, or
+ * {@code false} to leave the source out and print the logger name
+ * instead.
  *
  * @since 1.4
  * @see java.util.Formatter
@@ -58,8 +66,13 @@ import sun.util.logging.LoggingSupport;
 public class SimpleFormatter extends Formatter {
 
     // format string for printing the log record
-    private static final String format = LoggingSupport.getSimpleFormat();
-    private final Date dat = new Date();
+    static final String format = LoggingSupport.getSimpleFormat();
+    // the format string compiled once, or null to use String.format
+    static final SimpleFormatPattern pattern = SimpleFormatPattern.compile(format);
+
+    // how callers are inferred, one of the CallSiteCache modes
+    final int inferCaller = CallSiteCache.getMode(LogManager.getLogManager(),
+            getClass().getName() + ".inferCaller", CallSiteCache.ON);
 
     /**
      * Format the given LogRecord.
@@ -136,18 +149,45 @@ public class SimpleFormatter extends Formatter {
      * @param record the log record to be formatted.
      * @return a formatted log record
      */
-    public synchronized String format(LogRecord record) {
-        dat.setTime(record.getMillis());
+    public String format(LogRecord record) {
+        String source = source(record, inferCaller);
+        String message = formatMessage(record);
+        String throwable = thrownText(record);
+        if (pattern != null) {
+            return pattern.format(record.getMillis(),
+                                  source,
+                                  record.getLoggerName(),
+                                  record.getLevel().getLocalizedLevelName(),
+                                  message,
+                                  throwable);
+        }
+        return String.format(format,
+                             new Date(record.getMillis()),
+                             source,
+                             record.getLoggerName(),
+                             record.getLevel().getLocalizedLevelName(),
+                             message,
+                             throwable);
+    }
+
+    // Package private method to compute the source argument:
+    // the caller, if known, otherwise the logger name.
+    static String source(LogRecord record, int inferCaller) {
         String source;
-        if (record.getSourceClassName() != null) {
-            source = record.getSourceClassName();
-            if (record.getSourceMethodName() != null) {
-               source += " " + record.getSourceMethodName();
+        if (record.getSourceClassName(inferCaller) != null) {
+            source = record.getSourceClassName(inferCaller);
+            if (record.getSourceMethodName(inferCaller) != null) {
+               source += " " + record.getSourceMethodName(inferCaller);
             }
         } else {
             source = record.getLoggerName();
         }
-        String message = formatMessage(record);
+        return source;
+    }
+
+    // Package private method to compute the thrown argument: a
+    // newline followed by the stack trace, or an empty string.
+    static String thrownText(LogRecord record) {
         String throwable = "";
         if (record.getThrown() != null) {
             StringWriter sw = new StringWriter();
@@ -157,12 +197,6 @@ public class SimpleFormatter extends Formatter {
             pw.close();
             throwable = sw.toString();
         }
-        return String.format(format,
-                             dat,
-                             source,
-                             record.getLoggerName(),
-                             record.getLevel().getLocalizedLevelName(),
-                             message,
-                             throwable);
+        return throwable;
     }
 }
@@ -20,6 +20,7 @@ public class SocketHandler extends StreamHandler {
         setLevel(manager.getLevelProperty(cname +".level", Level.ALL));
         setFilter(manager.getFilterProperty(cname +".filter", null));
         setFormatter(manager.getFormatterProperty(cname +".formatter", new XMLFormatter()));
+        setEncoder(manager.getEncoderProperty(cname +".encoder", null));
         try {
             setEncoding(manager.getStringProperty(cname +".encoding", null));
         } catch (Exception ex) {
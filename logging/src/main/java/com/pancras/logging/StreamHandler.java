@@ -4,11 +4,18 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public class StreamHandler extends Handler {
     private OutputStream output;
     private boolean doneHeader;
     private volatile Writer writer;
+    // Used instead of the writer when there is an Encoder.
+    private Charset charset;
+    // True if a byte order mark is due before the next bytes, as the
+    // writer would write one.
+    private boolean needBom;
 
     // Private method to configure a StreamHandler from LogManager
     // properties and/or default values as specified in the class
@@ -20,6 +27,7 @@ public class StreamHandler extends Handler {
         setLevel(manager.getLevelProperty(cname +".level", Level.INFO));
         setFilter(manager.getFilterProperty(cname +".filter", null));
         setFormatter(manager.getFormatterProperty(cname +".formatter", new SimpleFormatter()));
+        setEncoder(manager.getEncoderProperty(cname +".encoder", null));
         try {
             setEncoding(manager.getStringProperty(cname +".encoding", null));
         } catch (Exception ex) {
@@ -75,6 +83,7 @@ public class StreamHandler extends Handler {
         output = out;
         doneHeader = false;
         String encoding = getEncoding();
+        setCharset(encoding);
         if (encoding == null) {
             writer = new OutputStreamWriter(output);
         } else {
@@ -110,6 +119,7 @@ public class StreamHandler extends Handler {
         }
         // Replace the current writer with a writer for the new encoding.
         flush();
+        setCharset(encoding);
         if (encoding == null) {
             writer = new OutputStreamWriter(output);
         } else {
@@ -125,7 +135,9 @@ public class StreamHandler extends Handler {
      * If not it silently returns.  If so, it calls any associated
      * <tt>Filter</tt> to check if the record should be published.  If so,
      * it calls its <tt>Formatter</tt> to format the record and then writes
-     * the result to the current output stream.
+     * the result to the current output stream.  If an <tt>Encoder</tt>
+     * has been set, it is used instead of the <tt>Formatter</tt> and the
+     * encoded bytes are written to the output stream as they are.
      * <p>
      * If this is the first <tt>LogRecord</tt> to be written to a given
      * <tt>OutputStream</tt>, the <tt>Formatter</tt>'s "head" string is
@@ -139,6 +151,11 @@ public class StreamHandler extends Handler {
         if (!isLoggable(record)) {
             return;
         }
+        Encoder encoder = getEncoder();
+        if (encoder != null) {
+            publishEncoded(record, encoder);
+            return;
+        }
         String msg;
         try {
             msg = getFormatter().format(record);
@@ -162,6 +179,78 @@ public class StreamHandler extends Handler {
         }
     }
 
+    // Private method to set the charset used with an Encoder.
+    private void setCharset(String encoding) {
+        charset = (encoding == null) ? Charset.defaultCharset() : Charset.forName(encoding);
+        needBom = EncodeBuffer.bom(charset).length > 0;
+    }
+
+    // Private method to write encoded bytes to the output stream.
+    private void writeEncoded(byte bytes[], int off, int len) throws java.io.IOException {
+        if (needBom && len > 0) {
+            output.write(EncodeBuffer.bom(charset));
+            needBom = false;
+        }
+        output.write(bytes, off, len);
+    }
+
+    // Private method to publish a record through an Encoder.  The bytes
+    // go straight to the output stream, bypassing the writer.
+    private void publishEncoded(LogRecord record, Encoder encoder) {
+        EncodeBuffer eb = EncodeBuffer.acquire();
+        try {
+            ByteBuffer buf;
+            try {
+                buf = eb.encode(this, record, EncodeBuffer.textCharset(charset));
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.FORMAT_FAILURE);
+                return;
+            }
+
+            try {
+                if (!doneHeader) {
+                    byte head[] = encoder.getHead(this).getBytes(EncodeBuffer.textCharset(charset));
+                    writeEncoded(head, 0, head.length);
+                    doneHeader = true;
+                }
+                if (buf.hasArray()) {
+                    writeEncoded(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                } else {
+                    byte bytes[] = new byte[buf.remaining()];
+                    buf.get(bytes);
+                    writeEncoded(bytes, 0, bytes.length);
+                }
+            } catch (Exception ex) {
+                // We don't want to throw an exception here, but we
+                // report the exception to any registered ErrorManager.
+                reportError(null, ex, ErrorManager.WRITE_FAILURE);
+            }
+        } finally {
+            eb.release();
+        }
+    }
+
+    /**
+     * Set an <tt>Encoder</tt>, to be used instead of the <tt>Formatter</tt>.
+     * <p>
+     * The records are then encoded straight into bytes and written to
+     * the output stream without going through a <tt>Writer</tt>.
+     *
+     * @param newEncoder the <tt>Encoder</tt> to use, or null to use
+     *                   the <tt>Formatter</tt>
+     * @exception  SecurityException  if a security manager exists and if
+     *             the caller does not have <tt>LoggingPermission("control")</tt>.
+     */
+    @Override
+    public synchronized void setEncoder(Encoder newEncoder) throws SecurityException {
+        super.setEncoder(newEncoder);
+        // Anything the writer holds must be written before the
+        // next record, which may bypass it.
+        flush();
+    }
+
 
     /**
      * Check if this <tt>Handler</tt> would actually log a given <tt>LogRecord</tt>.
@@ -201,12 +290,20 @@ public class StreamHandler extends Handler {
     private synchronized void flushAndClose() throws SecurityException {
         checkPermission();
         if (writer != null) {
+            Encoder encoder = getEncoder();
             try {
-                if (!doneHeader) {
-                    writer.write(getFormatter().getHead(this));
-                    doneHeader = true;
+                if (encoder != null) {
+                    // The writer is not used with an encoder.
+                    String text = doneHeader ? "" : encoder.getHead(this);
+                    byte bytes[] = (text + encoder.getTail(this)).getBytes(EncodeBuffer.textCharset(charset));
+                    writeEncoded(bytes, 0, bytes.length);
+                } else {
+                    if (!doneHeader) {
+                        writer.write(getFormatter().getHead(this));
+                    }
+                    writer.write(getFormatter().getTail(this));
                 }
-                writer.write(getFormatter().getTail(this));
+                doneHeader = true;
                 writer.flush();
                 writer.close();
             } catch (Exception ex) {
@@ -38,12 +38,21 @@ import java.util.ResourceBundle;
  * The XMLFormatter can be used with arbitrary character encodings,
  * but it is recommended that it normally be used with UTF-8.  The
  * character encoding can be set on the output Handler.
+ * <p>
+ * The {@code com.pancras.logging.XMLFormatter.inferCaller} property
+ * tells how the class and method of a record are found when they were
+ * not given by the logging call: {@code true} (the default) to walk
+ * the stack, which is done only once for each {@link LogSite}, or
+ * {@code false} to leave them out.
  *
  * @since 1.4
  */
 
 public class XMLFormatter extends Formatter {
     private LogManager manager = LogManager.getLogManager();
+    // how callers are inferred, one of the CallSiteCache modes
+    private final int inferCaller = CallSiteCache.getMode(manager,
+            getClass().getName() + ".inferCaller", CallSiteCache.ON);
 
     // Append a two digit number.
     private void a2(StringBuilder sb, int x) {
@@ -128,15 +137,15 @@ public class XMLFormatter extends Formatter {
         escape(sb, record.getLevel().toString());
         sb.append("</level>\n");
 
-        if (record.getSourceClassName() != null) {
+        if (record.getSourceClassName(inferCaller) != null) {
             sb.append("  <class>");
-            escape(sb, record.getSourceClassName());
+            escape(sb, record.getSourceClassName(inferCaller));
             sb.append("</class>\n");
         }
 
-        if (record.getSourceMethodName() != null) {
+        if (record.getSourceMethodName(inferCaller) != null) {
             sb.append("  <method>");
-            escape(sb, record.getSourceMethodName());
+            escape(sb, record.getSourceMethodName(inferCaller));
             sb.append("</method>\n");
         }
 
@@ -169,11 +178,11 @@ public class XMLFormatter extends Formatter {
             // The message is not in the catalog.  Drop through.
         }
 
-        Object parameters[] = record.getParameters();
         //  Check to see if the parameter was not a messagetext format
         //  or was not null or empty
-        if ( parameters != null && parameters.length != 0
-                && record.getMessage().indexOf("{") == -1 ) {
+        Object parameters[] = record.getMessage() == null
+                || record.getMessage().indexOf("{") >= 0 ? null : record.getParameters();
+        if ( parameters != null && parameters.length != 0 ) {
             for (int i = 0; i < parameters.length; i++) {
                 sb.append("  <param>");
                 try {
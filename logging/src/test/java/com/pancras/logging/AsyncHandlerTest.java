@@ -0,0 +1,135 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncHandlerTest {
+
+    // A target which keeps what it is given, publishing slowly.
+    static class RecordingHandler extends Handler {
+        final List<String> published = new ArrayList<String>();
+        volatile int publishedAtFlush = -1;
+        volatile int publishedAtClose = -1;
+        volatile long delayMillis;
+
+        @Override
+        public void publish(LogRecord record) {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (published) {
+                published.add(record.getMessage());
+            }
+        }
+
+        @Override
+        public void flush() {
+            publishedAtFlush = size();
+        }
+
+        @Override
+        public void close() {
+            publishedAtClose = size();
+        }
+
+        int size() {
+            synchronized (published) {
+                return published.size();
+            }
+        }
+    }
+
+    private AsyncHandler handler;
+
+    @After
+    public void tearDown() {
+        if (handler != null) {
+            handler.close();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void flushReturnsOnlyAfterTargetPublishedEveryRecord() {
+        RecordingHandler target = new RecordingHandler();
+        target.delayMillis = 2;
+        handler = new AsyncHandler(target, 64);
+        for (int i = 0; i < 20; i++) {
+            handler.publish(new LogRecord(Level.INFO, "m" + i));
+        }
+        handler.flush();
+        assertEquals(20, target.publishedAtFlush);
+        assertEquals(20, target.size());
+    }
+
+    @Test(timeout = 30000)
+    public void recordsOfOneThreadArePublishedInOrder() {
+        RecordingHandler target = new RecordingHandler();
+        handler = new AsyncHandler(target, 16);
+        for (int i = 0; i < 1000; i++) {
+            handler.publish(new LogRecord(Level.INFO, "m" + i));
+        }
+        handler.flush();
+        assertEquals(1000, target.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("m" + i, target.published.get(i));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void closePublishesQueuedRecordsBeforeClosingTarget() {
+        RecordingHandler target = new RecordingHandler();
+        target.delayMillis = 1;
+        handler = new AsyncHandler(target, 64);
+        for (int i = 0; i < 30; i++) {
+            handler.publish(new LogRecord(Level.INFO, "m" + i));
+        }
+        handler.close();
+        assertEquals(30, target.publishedAtClose);
+
+        handler.publish(new LogRecord(Level.INFO, "late"));
+        assertEquals(30, target.size());
+        handler = null;
+    }
+
+    @Test(timeout = 30000)
+    public void flushFromTargetDoesNotWaitForItself() {
+        final AsyncHandler[] self = new AsyncHandler[1];
+        final RecordingHandler target = new RecordingHandler() {
+            @Override
+            public void publish(LogRecord record) {
+                super.publish(record);
+                self[0].flush();
+            }
+        };
+        handler = new AsyncHandler(target, 4);
+        self[0] = handler;
+        handler.publish(new LogRecord(Level.INFO, "m"));
+        handler.flush();
+        assertEquals(1, target.size());
+    }
+
+    @Test(timeout = 30000)
+    public void levelAndClosedStateAreChecked() {
+        RecordingHandler target = new RecordingHandler();
+        handler = new AsyncHandler(target, 4);
+        handler.setLevel(Level.WARNING);
+        assertFalse(handler.isLoggable(new LogRecord(Level.INFO, "m")));
+        assertTrue(handler.isLoggable(new LogRecord(Level.SEVERE, "m")));
+        handler.publish(new LogRecord(Level.INFO, "dropped"));
+        handler.publish(new LogRecord(Level.SEVERE, "kept"));
+        handler.flush();
+        assertEquals(1, target.size());
+        assertEquals("kept", target.published.get(0));
+    }
+}
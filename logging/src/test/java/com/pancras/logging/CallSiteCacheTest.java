@@ -0,0 +1,142 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallSiteCacheTest {
+    private static final String CLASS = CallSiteCacheTest.class.getName();
+
+    private Logger logger;
+    private LogRecord last;
+    private String lastMethod;
+    private boolean askSource = true;
+
+    @Before
+    public void setUp() {
+        logger = Logger.getLogger("CallSiteCacheTest");
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.ALL);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                // Like any handler, ask for the source on the logging thread.
+                last = record;
+                lastMethod = askSource ? record.getSourceMethodName() : null;
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (Handler h : logger.getHandlers()) {
+            logger.removeHandler(h);
+        }
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private void first() {
+        logger.info("same message");
+    }
+
+    private void second() {
+        logger.info("same message");
+    }
+
+    @Test
+    public void sameMessageFromTwoPlacesGetsEachCaller() {
+        for (int i = 0; i < 5000; i++) {
+            first();
+            assertEquals("first", lastMethod);
+            assertEquals(CLASS, last.getSourceClassName());
+            second();
+            assertEquals("second", lastMethod);
+        }
+    }
+
+    private void logAt(LogSite site) {
+        logger.log(site, "at a site");
+    }
+
+    private void logElsewhereAt(LogSite site) {
+        logger.log(site, "at a site");
+    }
+
+    @Test
+    public void siteRemembersTheCallerOfItsFirstRecord() {
+        LogSite site = new LogSite(logger, Level.INFO);
+        assertNull(site.getSourceMethodName());
+        logAt(site);
+        assertEquals("logAt", lastMethod);
+        assertEquals(CLASS, site.getSourceClassName());
+        assertEquals("logAt", site.getSourceMethodName());
+        // A site is meant for one place, so it is not walked again.
+        logElsewhereAt(site);
+        assertEquals("logAt", lastMethod);
+    }
+
+    @Test
+    public void siteWithAGivenSourceIsNeverInferred() {
+        LogSite site = new LogSite(logger, Level.INFO, "com.wombat.Nose", "sniff");
+        logAt(site);
+        assertEquals("com.wombat.Nose", last.getSourceClassName());
+        assertEquals("sniff", lastMethod);
+    }
+
+    @Test
+    public void callerAskedOffTheLoggingThreadIsNotRemembered() throws Exception {
+        LogSite site = new LogSite(logger, Level.INFO);
+        askSource = false;
+        logAt(site);
+        final LogRecord record = last;
+        Thread other = new Thread() {
+            @Override
+            public void run() {
+                record.getSourceMethodName();
+            }
+        };
+        other.start();
+        other.join();
+        assertNull(site.getSourceMethodName());
+
+        askSource = true;
+        logAt(site);
+        assertEquals("logAt", lastMethod);
+        assertEquals("logAt", site.getSourceMethodName());
+    }
+
+    @Test
+    public void inferenceCanBeTurnedOff() {
+        first();
+        LogRecord record = new LogRecord(Level.INFO, "direct");
+        assertNull(record.getSourceClassName(CallSiteCache.OFF));
+        assertNull(record.getSourceMethodName(CallSiteCache.OFF));
+    }
+
+    @Test
+    public void modesAreParsedFromProperties() throws IOException {
+        String props = "a.inferCaller=false\nb.inferCaller= True \nc.inferCaller=cached\nd.inferCaller=maybe\n";
+        LogManager manager = LogManager.getLogManager();
+        manager.readConfiguration(new ByteArrayInputStream(props.getBytes("ISO-8859-1")));
+        assertEquals(CallSiteCache.OFF, CallSiteCache.getMode(manager, "a.inferCaller", CallSiteCache.ON));
+        assertEquals(CallSiteCache.ON, CallSiteCache.getMode(manager, "b.inferCaller", CallSiteCache.OFF));
+        // Anything else is invalid.
+        assertEquals(CallSiteCache.OFF, CallSiteCache.getMode(manager, "c.inferCaller", CallSiteCache.OFF));
+        assertEquals(CallSiteCache.OFF, CallSiteCache.getMode(manager, "d.inferCaller", CallSiteCache.OFF));
+        assertEquals(CallSiteCache.ON, CallSiteCache.getMode(manager, "e.inferCaller", CallSiteCache.ON));
+    }
+}
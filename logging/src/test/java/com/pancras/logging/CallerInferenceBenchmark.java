@@ -0,0 +1,72 @@
+package com.pancras.logging;
+
+/**
+ * Measures the cost of logging a record whose caller is asked for by
+ * the handler, with caller inference off, on for plain calls, which
+ * walk the stack for every record, and on through a LogSite, which
+ * remembers it.
+ * <p>
+ * Run with <tt>java com.pancras.logging.CallerInferenceBenchmark [records]</tt>.
+ */
+public class CallerInferenceBenchmark {
+    private static final int ROUNDS = 5;
+
+    // Asks every record for its source, as formatters do.
+    private static final class SourceHandler extends Handler {
+        final int mode;
+        int found;
+
+        SourceHandler(int mode) {
+            this.mode = mode;
+        }
+
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getSourceClassName(mode) != null) {
+                found++;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String args[]) {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        Logger logger = Logger.getLogger("CallerInferenceBenchmark");
+        logger.setUseParentHandlers(false);
+        LogSite site = new LogSite(logger, Level.INFO);
+
+        String names[] = { "off", "on, plain", "on, LogSite" };
+        int modes[] = { CallSiteCache.OFF, CallSiteCache.ON, CallSiteCache.ON };
+        for (int round = 0; round < ROUNDS; round++) {
+            // The first rounds warm up.
+            boolean report = round >= ROUNDS - 2;
+            for (int m = 0; m < modes.length; m++) {
+                SourceHandler handler = new SourceHandler(modes[m]);
+                logger.addHandler(handler);
+                long start = System.nanoTime();
+                if (m == 2) {
+                    for (int i = 0; i < records; i++) {
+                        logger.log(site, "message");
+                    }
+                } else {
+                    for (int i = 0; i < records; i++) {
+                        logger.info("message");
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+                logger.removeHandler(handler);
+                if (report) {
+                    System.out.printf("%-16s %8.1f ns/record  (%d sources found)%n",
+                            names[m], (double) elapsed / records, handler.found);
+                }
+            }
+        }
+    }
+}
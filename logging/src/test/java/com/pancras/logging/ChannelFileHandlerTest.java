@@ -0,0 +1,192 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ChannelFileHandlerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private ChannelFileHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("ChannelFileHandlerTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (handler != null) {
+            handler.close();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private ChannelFileHandler open(long limit, int count, boolean append) throws IOException {
+        ChannelFileHandler h = new ChannelFileHandler(
+                new File(dir, "test%g.log").getPath(), limit, count, append);
+        h.setFormatter(new LineFormatter());
+        h.setEncoding("UTF-8");
+        return h;
+    }
+
+    private List<String> lines(String name) throws IOException {
+        return Files.readAllLines(new File(dir, name).toPath(), UTF_8);
+    }
+
+    private static List<String> range(int from, int to) {
+        List<String> list = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            list.add("record " + (i < 10 ? "0" : "") + i);
+        }
+        return list;
+    }
+
+    @Test
+    public void recordsAreWrittenInOrder() throws IOException {
+        handler = open(0, 1, false);
+        for (String msg : range(0, 50)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.flush();
+        assertEquals(range(0, 50), lines("test0.log"));
+    }
+
+    @Test
+    public void closeWritesEverythingAndReleasesTheLock() throws IOException {
+        handler = open(0, 1, false);
+        for (String msg : range(0, 10)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.close();
+        handler = null;
+        assertEquals(range(0, 10), lines("test0.log"));
+        for (File f : dir.listFiles()) {
+            assertFalse(f.getName(), f.getName().endsWith(".lck"));
+        }
+    }
+
+    @Test
+    public void appendKeepsTheExistingFile() throws IOException {
+        handler = open(0, 1, false);
+        for (String msg : range(0, 3)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.close();
+        handler = open(0, 1, true);
+        for (String msg : range(3, 6)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.flush();
+        assertEquals(range(0, 6), lines("test0.log"));
+    }
+
+    @Test
+    public void filesRotateAtTheLimit() throws IOException {
+        // Each record is 10 bytes, so five of them fill a file.
+        handler = open(50, 3, false);
+        for (String msg : range(0, 20)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.flush();
+        List<String> kept = new ArrayList<String>();
+        kept.addAll(lines("test2.log"));
+        kept.addAll(lines("test1.log"));
+        kept.addAll(lines("test0.log"));
+        assertEquals(range(10, 20), kept);
+        assertFalse(new File(dir, "test3.log").exists());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentRecordsAreAllWrittenWhole() throws Exception {
+        handler = open(0, 1, false);
+        final int threads = 4;
+        final int perThread = 2000;
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        handler.publish(new LogRecord(Level.INFO, id + "-" + i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        handler.flush();
+        List<String> lines = lines("test0.log");
+        assertEquals(threads * perThread, lines.size());
+        Set<String> unique = new HashSet<String>(lines);
+        assertEquals(lines.size(), unique.size());
+        for (int t = 0; t < threads; t++) {
+            assertTrue(unique.contains(t + "-" + (perThread - 1)));
+        }
+    }
+
+    @Test
+    public void interruptedThreadsStillLog() throws IOException {
+        handler = open(0, 1, false);
+        Thread.currentThread().interrupt();
+        try {
+            for (String msg : range(0, 5)) {
+                handler.publish(new LogRecord(Level.INFO, msg));
+            }
+            handler.flush();
+        } finally {
+            // The interrupt is kept for the code that logged.
+            assertTrue(Thread.interrupted());
+        }
+        for (String msg : range(5, 10)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.flush();
+        assertEquals(range(0, 10), lines("test0.log"));
+    }
+
+    @Test(timeout = 30000)
+    public void closeStopsTheIntervalFlusherAfterTheLastWrite() throws Exception {
+        String props = "com.pancras.logging.ChannelFileHandler.flush=interval\n"
+                + "com.pancras.logging.ChannelFileHandler.flushInterval=1\n";
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes("ISO-8859-1")));
+        handler = open(0, 1, false);
+        handler.setFormatter(new LineFormatter() {
+            @Override
+            public String getTail(Handler h) {
+                return "tail\n";
+            }
+        });
+        for (String msg : range(0, 50)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+            Thread.sleep(1);
+        }
+        handler.close();
+        handler = null;
+        List<String> expected = range(0, 50);
+        expected.add("tail");
+        assertEquals(expected, lines("test0.log"));
+    }
+}
@@ -0,0 +1,83 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileHandlerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private Logger logger;
+    private FileHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("FileHandlerTest").toFile();
+        logger = Logger.getLogger("FileHandlerTest");
+        logger.setUseParentHandlers(false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (handler != null) {
+            logger.removeHandler(handler);
+            handler.close();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+    }
+
+    @Test(timeout = 60000)
+    public void recordsLoggedWhileRotatingAreKept() throws Exception {
+        // Each file holds ten records, so the rotation thread rotates
+        // many times while both threads keep logging.
+        handler = new FileHandler(new File(dir, "test%g.log").getPath(), 100, 1000, false);
+        handler.setFormatter(new LineFormatter());
+        handler.setEncoding("UTF-8");
+        logger.addHandler(handler);
+        final int perThread = 2000;
+        Thread[] threads = new Thread[2];
+        for (int t = 0; t < threads.length; t++) {
+            final String prefix = "t" + t + " ";
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        logger.info(prefix + i);
+                        if (i % 10 == 0) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        logger.removeHandler(handler);
+        handler.close();
+        handler = null;
+        Set<String> seen = new HashSet<String>();
+        for (File f : dir.listFiles()) {
+            if (f.getName().endsWith(".log")) {
+                seen.addAll(Files.readAllLines(f.toPath(), UTF_8));
+            }
+        }
+        assertEquals(threads.length * perThread, seen.size());
+    }
+}
@@ -0,0 +1,71 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FormatterTest {
+    private final Formatter formatter = new LineFormatter();
+    private Locale locale;
+
+    @Before
+    public void setUp() {
+        locale = Locale.getDefault(Locale.Category.FORMAT);
+        Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(Locale.Category.FORMAT, locale);
+    }
+
+    private String format(String msg, Object... params) {
+        LogRecord record = new LogRecord(Level.INFO, msg);
+        record.setParameters(params);
+        return formatter.formatMessage(record);
+    }
+
+    private String formatInline(String msg, Object param) {
+        LogRecord record = new LogRecord(Level.INFO, msg);
+        record.setInlineParameters(param);
+        return formatter.formatMessage(record);
+    }
+
+    @Test
+    public void indexedPlaceholdersAreSubstituted() {
+        assertEquals("a 1,234 b x", format("a {0} b {1}", 1234, "x"));
+        assertEquals("x and {2}", format("{0} and {2}", "x"));
+    }
+
+    @Test
+    public void emptyPlaceholdersTakeTheNextParameter() {
+        assertEquals("x then y", format("{} then {}", "x", "y"));
+        assertEquals("x then {}", format("{} then {}", "x"));
+    }
+
+    @Test
+    public void formatsTheBaselineDidNotFormatAreKept() {
+        // Only "{0" to "{3" made the pattern a java.text format.
+        assertEquals("a {4} b", format("a {4} b", 0, 1, 2, 3, "x"));
+        assertEquals("{\"key\":1}", format("{\"key\":1}", "x"));
+        assertEquals("no braces", format("no braces", "x"));
+    }
+
+    @Test
+    public void javaTextFormatsStillUseMessageFormat() {
+        assertEquals("it's 1.50", format("it''s {0,number,0.00}", 1.5));
+        // A bad java.text format is left as it is.
+        assertEquals("{0,bad}", format("{0,bad}", "x"));
+    }
+
+    @Test
+    public void inlineParametersFallBackToMessageFormat() {
+        assertEquals("x", formatInline("{0}", "x"));
+        assertEquals("it's x", formatInline("it''s {0}", "x"));
+        assertEquals("{4}", formatInline("{4}", "x"));
+    }
+}
@@ -0,0 +1,10 @@
+package com.pancras.logging;
+
+// Formats a record as its raw message on a line of its own, so that
+// tests can read back exactly what was logged.
+class LineFormatter extends Formatter {
+    @Override
+    public String format(LogRecord record) {
+        return record.getMessage() + "\n";
+    }
+}
@@ -0,0 +1,211 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Calendar;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogFileSetTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private LogFileSet set;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("LogFileSetTest").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (set != null) {
+            set.release();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    private LogFileSet lock(String pattern, int count, boolean indexed, boolean compress)
+            throws IOException {
+        LogFileSet s = new LogFileSet(new File(dir, pattern).getPath(), count, indexed, compress);
+        s.lock();
+        return s;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(UTF_8));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), UTF_8);
+    }
+
+    private static String gunzip(File file) throws IOException {
+        InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte buff[] = new byte[1024];
+            int n;
+            while ((n = in.read(buff)) > 0) {
+                out.write(buff, 0, n);
+            }
+            return new String(out.toByteArray(), UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static File gz(File file) {
+        return new File(file.getPath() + ".gz");
+    }
+
+    // Wait for the background compression of a file.
+    private static void awaitCompressed(File file) throws InterruptedException {
+        for (int i = 0; i < 1000 && (file.exists() || !gz(file).exists()); i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void shiftRenamesGenerationsAndDropsTheOldest() throws IOException {
+        set = lock("t%g.log", 3, false, false);
+        for (String text : new String[] { "a", "b", "c", "d" }) {
+            set.shift();
+            write(set.file(0), text);
+        }
+        assertEquals("d", read(set.file(0)));
+        assertEquals("c", read(set.file(1)));
+        assertEquals("b", read(set.file(2)));
+        assertFalse(new File(dir, "t3.log").exists());
+    }
+
+    @Test
+    public void indexedRotationRenamesNothing() throws IOException {
+        set = lock("t%g.log", 3, true, false);
+        File first = set.file(0);
+        write(first, "a");
+        set.shift();
+        File second = set.file(0);
+        assertFalse(first.equals(second));
+        assertEquals(first, set.file(1));
+        assertEquals("a", read(first));
+        write(second, "b");
+        set.shift();
+        set.shift();
+        // The first file has fallen out of the set of three.
+        assertFalse(first.exists());
+        assertEquals("b", read(set.file(2)));
+        assertNull(set.file(3));
+    }
+
+    @Test
+    public void indexedRotationCarriesOnAfterRestart() throws IOException {
+        set = lock("t%g.log", 3, true, false);
+        set.shift();
+        set.shift();
+        File current = set.file(0);
+        write(current, "x");
+        set.release();
+
+        set = lock("t%g.log", 3, true, false);
+        assertEquals(current, set.file(0));
+        set.shift();
+        assertEquals(current, set.file(1));
+    }
+
+    @Test
+    public void secondLockGetsOtherFiles() throws IOException {
+        set = lock("t%u.%g.log", 1, false, false);
+        LogFileSet other = lock("t%u.%g.log", 1, false, false);
+        try {
+            assertFalse(set.file(0).equals(other.file(0)));
+        } finally {
+            other.release();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void rotatedFilesAreCompressedAndKeepMoving() throws Exception {
+        set = lock("t%g.log", 3, false, true);
+        write(set.file(0), "first");
+        set.shift();
+        File rotated = set.file(1);
+        awaitCompressed(rotated);
+        assertFalse(rotated.exists());
+        assertEquals("first", gunzip(gz(rotated)));
+        // The current file is never compressed.
+        write(set.file(0), "second");
+        assertFalse(gz(set.file(0)).exists());
+
+        set.shift();
+        awaitCompressed(set.file(1));
+        assertEquals("first", gunzip(gz(set.file(2))));
+        assertEquals("second", gunzip(gz(set.file(1))));
+    }
+
+    @Test(timeout = 30000)
+    public void indexedFilesAreCompressedToo() throws Exception {
+        set = lock("t%g.log", 2, true, true);
+        write(set.file(0), "first");
+        set.shift();
+        awaitCompressed(set.file(1));
+        assertEquals("first", gunzip(gz(set.file(1))));
+    }
+
+    @Test
+    public void datedPatternsRollAtTheStartOfTheNextPeriod() {
+        Calendar c = Calendar.getInstance();
+        c.set(2024, Calendar.MARCH, 14, 15, 9, 26);
+        c.set(Calendar.MILLISECOND, 535);
+        long now = c.getTimeInMillis();
+
+        LogFileSet daily = new LogFileSet(new File(dir, "t-%d.log").getPath(), 1, false, false);
+        assertTrue(daily.isTimed());
+        c.set(2024, Calendar.MARCH, 15, 0, 0, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        assertEquals(c.getTimeInMillis(), daily.nextPeriod(now));
+
+        LogFileSet hourly = new LogFileSet(new File(dir, "t-%d{yyyy-MM-dd-HH}.log").getPath(), 1, false, false);
+        c.set(2024, Calendar.MARCH, 14, 16, 0, 0);
+        assertEquals(c.getTimeInMillis(), hourly.nextPeriod(now));
+
+        LogFileSet monthly = new LogFileSet(new File(dir, "t-%d{yyyy-MM}.log").getPath(), 1, false, false);
+        c.set(2024, Calendar.APRIL, 1, 0, 0, 0);
+        assertEquals(c.getTimeInMillis(), monthly.nextPeriod(now));
+
+        LogFileSet plain = new LogFileSet(new File(dir, "t%g.log").getPath(), 1, false, false);
+        assertFalse(plain.isTimed());
+    }
+
+    @Test
+    public void rollStartsTheFilesOfTheNewPeriod() throws IOException {
+        Calendar c = Calendar.getInstance();
+        c.set(2024, Calendar.MARCH, 14, 0, 0, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        set = lock("t-%d.%g.log", 2, false, false);
+        File today = set.file(0);
+        File tomorrow = set.next(c.getTimeInMillis());
+        assertNotNull(tomorrow);
+        set.roll(c.getTimeInMillis());
+        assertEquals(tomorrow, set.file(0));
+        assertTrue(set.file(0).getName().startsWith("t-2024-03-14."));
+        assertFalse(today.equals(set.file(0)));
+    }
+}
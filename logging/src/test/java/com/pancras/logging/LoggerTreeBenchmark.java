@@ -0,0 +1,100 @@
+package com.pancras.logging;
+
+/**
+ * Measures the heap taken by the loggers and the logger name tree, and
+ * the time to look loggers up, with 10k, 100k and 1M loggers.
+ * <p>
+ * The loggers are named as in a large application, three levels below
+ * a common root.  Each size uses its own root, so the trees of smaller
+ * sizes are still there while larger ones are measured; the memory
+ * figure is the growth of the heap for each size alone.  For the 1M
+ * size, give the VM a heap of 2g or so.
+ * <p>
+ * Run with <tt>java -Xmx2g com.pancras.logging.LoggerTreeBenchmark [sizes...]</tt>.
+ */
+public class LoggerTreeBenchmark {
+    private static final int LOOKUP_ROUNDS = 3;
+
+    private static String name(String root, int i) {
+        return root + ".pkg" + (i / 10000) + ".sub" + (i / 100 % 100) + ".Class" + i;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String args[]) {
+        int sizes[];
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        } else {
+            sizes = new int[] { 10000, 100000, 1000000 };
+        }
+        LogManager manager = LogManager.getLogManager();
+        for (int size : sizes) {
+            String root = "bench" + size;
+            String names[] = new String[size];
+            for (int i = 0; i < size; i++) {
+                names[i] = name(root, i);
+            }
+            // Loggers are only weakly held by the LogManager.
+            Logger loggers[] = new Logger[size];
+
+            long before = usedHeap();
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i++) {
+                loggers[i] = Logger.getLogger(names[i]);
+            }
+            long created = System.nanoTime() - start;
+            long after = usedHeap();
+            System.out.printf("%8d loggers: %6.0f bytes/logger, created in %6.0f ns/logger%n",
+                    size, (double) (after - before) / size, (double) created / size);
+
+            for (int round = 0; round < LOOKUP_ROUNDS; round++) {
+                int found = 0;
+                start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    if (manager.getLogger(names[i]) != null) {
+                        found++;
+                    }
+                }
+                long hits = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    if (manager.getLogger(names[i] + "x") != null) {
+                        found++;
+                    }
+                }
+                long misses = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int i = 0; i < size; i++) {
+                    if (Logger.getLogger(names[i]) == loggers[i]) {
+                        found++;
+                    }
+                }
+                long gets = System.nanoTime() - start;
+                if (round == LOOKUP_ROUNDS - 1) {
+                    System.out.printf("%8s  lookup %6.1f ns, miss %6.1f ns, Logger.getLogger %6.1f ns (%d found)%n",
+                            "", (double) hits / size, (double) misses / size,
+                            (double) gets / size, found);
+                }
+            }
+            // Keep the loggers reachable until measured.
+            if (loggers[size - 1] == null) {
+                throw new AssertionError();
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MappedFileHandlerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private MappedFileHandler handler;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("MappedFileHandlerTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (handler != null) {
+            handler.close();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private MappedFileHandler open(int windowSize, long limit, int count) throws IOException {
+        return open(windowSize, limit, count, false, "UTF-8");
+    }
+
+    private MappedFileHandler open(int windowSize, long limit, int count, boolean append,
+                                   String encoding) throws IOException {
+        // The encoding is configured, so an appending handler knows it when it opens.
+        String props = "com.pancras.logging.MappedFileHandler.windowSize=" + windowSize + "\n"
+                + "com.pancras.logging.MappedFileHandler.encoding=" + encoding + "\n";
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes("ISO-8859-1")));
+        MappedFileHandler h = new MappedFileHandler(
+                new File(dir, "test%g.log").getPath(), limit, count, append);
+        h.setFormatter(new LineFormatter());
+        return h;
+    }
+
+    private List<String> lines(String name) throws IOException {
+        return Files.readAllLines(new File(dir, name).toPath(), UTF_8);
+    }
+
+    private static List<String> range(int from, int to) {
+        List<String> list = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            list.add("record " + (i < 10 ? "0" : "") + i);
+        }
+        return list;
+    }
+
+    @Test
+    public void recordsCrossManyWindows() throws IOException {
+        // 64 byte windows hold six 10 byte records and never a seventh.
+        handler = open(64, 0, 1);
+        for (String msg : range(0, 100)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.close();
+        handler = null;
+        assertEquals(range(0, 100), lines("test0.log"));
+    }
+
+    @Test
+    public void closeTruncatesTheFileToWhatWasWritten() throws IOException {
+        handler = open(4096, 0, 1);
+        for (String msg : range(0, 7)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.close();
+        assertEquals(70, new File(dir, "test0.log").length());
+        for (File f : dir.listFiles()) {
+            assertFalse(f.getName(), f.getName().endsWith(".lck"));
+        }
+
+        // Records published after close are ignored.
+        handler.publish(new LogRecord(Level.INFO, "late"));
+        assertEquals(70, new File(dir, "test0.log").length());
+        handler = null;
+    }
+
+    @Test
+    public void recordBiggerThanTheWindowGetsAWindowOfItsOwn() throws IOException {
+        handler = open(16, 0, 1);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            big.append('x');
+        }
+        handler.publish(new LogRecord(Level.INFO, "small"));
+        handler.publish(new LogRecord(Level.INFO, big.toString()));
+        handler.publish(new LogRecord(Level.INFO, "after"));
+        handler.close();
+        handler = null;
+        List<String> lines = lines("test0.log");
+        assertEquals(3, lines.size());
+        assertEquals("small", lines.get(0));
+        assertEquals(big.toString(), lines.get(1));
+        assertEquals("after", lines.get(2));
+    }
+
+    @Test
+    public void filesRotateAtTheLimit() throws IOException {
+        // Windows end at the limit, so five 10 byte records fill a file
+        // and the sixth starts the next one.
+        handler = open(64, 50, 3);
+        for (String msg : range(0, 20)) {
+            handler.publish(new LogRecord(Level.INFO, msg));
+        }
+        handler.close();
+        handler = null;
+        List<String> kept = new ArrayList<String>();
+        kept.addAll(lines("test2.log"));
+        kept.addAll(lines("test1.log"));
+        kept.addAll(lines("test0.log"));
+        assertEquals(range(5, 20), kept);
+        assertEquals(50, new File(dir, "test1.log").length());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentRecordsCrossingWindowsAreAllWrittenWhole() throws Exception {
+        handler = open(256, 0, 1);
+        final int threads = 4;
+        final int perThread = 2000;
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        handler.publish(new LogRecord(Level.INFO, id + "-" + i));
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        handler.close();
+        handler = null;
+        List<String> lines = lines("test0.log");
+        assertEquals(threads * perThread, lines.size());
+        Set<String> unique = new HashSet<String>(lines);
+        assertEquals(lines.size(), unique.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertTrue(unique.contains(t + "-" + i));
+            }
+        }
+    }
+
+    @Test
+    public void interruptedThreadsCrossWindowsAndRotate() throws IOException {
+        handler = open(64, 200, 3);
+        Thread.currentThread().interrupt();
+        try {
+            for (String msg : range(0, 40)) {
+                handler.publish(new LogRecord(Level.INFO, msg));
+            }
+        } finally {
+            // The interrupt is kept for the code that logged.
+            assertTrue(Thread.interrupted());
+        }
+        handler.close();
+        handler = null;
+        List<String> kept = new ArrayList<String>();
+        kept.addAll(lines("test1.log"));
+        kept.addAll(lines("test0.log"));
+        assertEquals(range(0, 40), kept);
+        assertFalse(new File(dir, "test2.log").exists());
+    }
+
+    @Test
+    public void appendStartsAfterTheZeroBytesLeftByACrash() throws IOException {
+        // A crash leaves the rest of the mapped window as zero bytes.
+        byte crashed[] = new byte[10 + 300];
+        System.arraycopy("record 00\n".getBytes(UTF_8), 0, crashed, 0, 10);
+        Files.write(new File(dir, "test0.log").toPath(), crashed);
+        handler = open(64, 0, 1, true, "UTF-8");
+        handler.publish(new LogRecord(Level.INFO, "record 01"));
+        handler.close();
+        handler = null;
+        assertEquals(20, new File(dir, "test0.log").length());
+        assertEquals(range(0, 2), lines("test0.log"));
+    }
+
+    @Test
+    public void appendKeepsCharactersEndingWithAZeroByte() throws IOException {
+        // In UTF-16LE a newline is 0A 00.
+        handler = open(64, 0, 1, false, "UTF-16LE");
+        handler.publish(new LogRecord(Level.INFO, "a"));
+        handler.close();
+        handler = open(64, 0, 1, true, "UTF-16LE");
+        handler.publish(new LogRecord(Level.INFO, "b"));
+        handler.close();
+        handler = null;
+        assertEquals("a\nb\n", new String(Files.readAllBytes(new File(dir, "test0.log").toPath()),
+                                          Charset.forName("UTF-16LE")));
+    }
+}
@@ -0,0 +1,123 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class MpscRingBufferTest {
+
+    private static LogRecord record(String msg) {
+        return new LogRecord(Level.INFO, msg);
+    }
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new MpscRingBuffer(1).capacity());
+        assertEquals(8, new MpscRingBuffer(5).capacity());
+        assertEquals(8, new MpscRingBuffer(8).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacityIsRejected() {
+        new MpscRingBuffer(0);
+    }
+
+    @Test
+    public void pollsInOfferOrderAndRefusesWhenFull() {
+        MpscRingBuffer queue = new MpscRingBuffer(4);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        LogRecord records[] = new LogRecord[4];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = record("r" + i);
+            assertTrue(queue.offer(records[i]));
+        }
+        assertFalse(queue.offer(record("extra")));
+        assertEquals(4, queue.tailCount());
+        for (int i = 0; i < records.length; i++) {
+            assertSame(records[i], queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(4, queue.headCount());
+    }
+
+    @Test
+    public void smallestBufferRefusesASecondRecord() {
+        MpscRingBuffer queue = new MpscRingBuffer(1);
+        for (int i = 0; i < queue.capacity(); i++) {
+            assertTrue(queue.offer(record("r" + i)));
+        }
+        assertFalse(queue.offer(record("extra")));
+        assertEquals("r0", queue.poll().getMessage());
+    }
+
+    @Test
+    public void slotsAreReusedOnLaterLaps() {
+        MpscRingBuffer queue = new MpscRingBuffer(2);
+        for (int i = 0; i < 100; i++) {
+            LogRecord r = record("r" + i);
+            assertTrue(queue.offer(r));
+            assertSame(r, queue.poll());
+        }
+        assertEquals(100, queue.tailCount());
+        assertEquals(100, queue.headCount());
+    }
+
+    @Test(timeout = 30000)
+    public void concurrentProducersLoseNothingAndKeepTheirOwnOrder() throws Exception {
+        final int producers = 4;
+        final int perProducer = 20000;
+        final MpscRingBuffer queue = new MpscRingBuffer(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread threads[] = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int id = p;
+            threads[p] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        LogRecord r = record(id + ":" + i);
+                        while (!queue.offer(r)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[p].start();
+        }
+        start.countDown();
+        int next[] = new int[producers];
+        int received = 0;
+        while (received < producers * perProducer) {
+            LogRecord r = queue.poll();
+            if (r == null) {
+                Thread.yield();
+                continue;
+            }
+            String msg = r.getMessage();
+            int colon = msg.indexOf(':');
+            int id = Integer.parseInt(msg.substring(0, colon));
+            int i = Integer.parseInt(msg.substring(colon + 1));
+            assertEquals("record of producer " + id, next[id], i);
+            next[id]++;
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+}
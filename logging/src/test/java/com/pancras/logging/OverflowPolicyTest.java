@@ -0,0 +1,111 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class OverflowPolicyTest {
+
+    // A target which holds the consumer in its first publish until
+    // released, so that the buffer can be filled.
+    static class GateHandler extends AsyncHandlerTest.RecordingHandler {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void publish(LogRecord record) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            super.publish(record);
+        }
+    }
+
+    private AsyncHandler handler;
+    private GateHandler gate;
+
+    @After
+    public void tearDown() {
+        if (gate != null) {
+            gate.release.countDown();
+        }
+        if (handler != null) {
+            handler.close();
+        }
+    }
+
+    // Hold the consumer in the target and fill the buffer, of the
+    // given size, behind it.
+    private void fill(int size) throws InterruptedException {
+        gate = new GateHandler();
+        handler = new AsyncHandler(gate, size);
+        handler.publish(new LogRecord(Level.INFO, "held"));
+        gate.entered.await();
+        for (int i = 0; i < size; i++) {
+            assertTrue(handler.offer(new LogRecord(Level.INFO, "q" + i), 0));
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void targetLoggingIntoItsFullHandlerDoesNotBlock() {
+        final AsyncHandler[] self = new AsyncHandler[1];
+        AsyncHandlerTest.RecordingHandler target = new AsyncHandlerTest.RecordingHandler() {
+            @Override
+            public void publish(LogRecord record) {
+                super.publish(record);
+                if (record.getMessage().equals("outer")) {
+                    for (int i = 0; i < 4; i++) {
+                        self[0].publish(new LogRecord(Level.INFO, "inner" + i));
+                    }
+                }
+            }
+        };
+        handler = new AsyncHandler(target, 1);
+        self[0] = handler;
+        handler.publish(new LogRecord(Level.INFO, "outer"));
+        handler.flush();
+        assertTrue(handler.getDroppedCount(Level.INFO) > 0);
+    }
+
+    @Test(timeout = 30000)
+    public void offerOnAFullBufferTimesOut() throws InterruptedException {
+        fill(2);
+        long start = System.nanoTime();
+        assertFalse(handler.offer(new LogRecord(Level.INFO, "late"), 50));
+        assertTrue(System.nanoTime() - start >= 50L * 1000L * 1000L);
+    }
+
+    @Test(timeout = 30000)
+    public void dropOldestEvictsTheOldestQueuedRecord() throws InterruptedException {
+        fill(2);
+        LogRecord newest = new LogRecord(Level.INFO, "newest");
+        assertTrue(new OverflowPolicy.DropOldest().overflow(handler, newest));
+        assertEquals(1, handler.getDroppedCount(Level.INFO));
+        gate.release.countDown();
+        handler.flush();
+        assertEquals("held", gate.published.get(0));
+        assertEquals("q1", gate.published.get(1));
+        assertEquals("newest", gate.published.get(2));
+    }
+
+    @Test(timeout = 30000)
+    public void dropBelowNeverDropsWarnings() {
+        handler = new AsyncHandler(new AsyncHandlerTest.RecordingHandler(), 8);
+        OverflowPolicy policy = new OverflowPolicy.DropBelow(Level.SEVERE, 0);
+        assertTrue(policy.overflow(handler, new LogRecord(Level.WARNING, "w")));
+        assertTrue(policy.overflow(handler, new LogRecord(Level.SEVERE, "s")));
+        assertFalse(policy.overflow(handler, new LogRecord(Level.INFO, "i")));
+
+        policy = new OverflowPolicy.DropBelow(Level.FINE, 0);
+        assertTrue(policy.overflow(handler, new LogRecord(Level.INFO, "i")));
+        assertFalse(policy.overflow(handler, new LogRecord(Level.FINER, "f")));
+    }
+}
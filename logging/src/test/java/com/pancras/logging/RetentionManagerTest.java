@@ -0,0 +1,99 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetentionManagerTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private File dir;
+    private RetentionManager manager;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("RetentionManagerTest").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (manager != null) {
+            manager.stop();
+        }
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(new byte[0]));
+    }
+
+    private RetentionManager start(String props) throws IOException {
+        props = "com.pancras.logging.RetentionManager.directories=" + dir.getPath().replace('\\', '/') + "\n"
+                + "com.pancras.logging.RetentionManager.interval=1\n" + props;
+        LogManager.getLogManager().readConfiguration(new ByteArrayInputStream(props.getBytes("ISO-8859-1")));
+        return new RetentionManager();
+    }
+
+    // Create a file of the given size, last written the given time ago.
+    private void create(String name, int size, long age) throws IOException {
+        File f = new File(dir, name);
+        Files.write(f.toPath(), new byte[size]);
+        f.setLastModified(System.currentTimeMillis() - age);
+    }
+
+    // Wait for a pass to delete the given file, and return the files left.
+    private Set<String> awaitDeletion(String name) throws InterruptedException {
+        File f = new File(dir, name);
+        while (f.exists()) {
+            Thread.sleep(10);
+        }
+        return new HashSet<String>(Arrays.asList(dir.list()));
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    @Test(timeout = 30000)
+    public void oldestLogFilesAreDeletedToMeetTheBudget() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            create("app.log." + i, 100, (10 - i) * HOUR);
+        }
+        // Older and bigger, but not a log file.
+        create("notes.txt", 1000, 20 * HOUR);
+        create("app.log.lck", 0, 20 * HOUR);
+        manager = start("com.pancras.logging.RetentionManager.maxBytes=300\n");
+        assertEquals(names("app.log.2", "app.log.3", "app.log.4", "notes.txt", "app.log.lck"),
+                     awaitDeletion("app.log.1"));
+    }
+
+    @Test(timeout = 30000)
+    public void logFilesPastTheMaximumAgeAreDeleted() throws Exception {
+        create("old.log", 10, 3 * HOUR);
+        create("old.log.1.gz", 10, 3 * HOUR);
+        create("new.log", 10, 0);
+        create("old.txt", 10, 3 * HOUR);
+        manager = start("com.pancras.logging.RetentionManager.maxAge=2h\n");
+        awaitDeletion("old.log");
+        assertEquals(names("new.log", "old.txt"), awaitDeletion("old.log.1.gz"));
+    }
+
+    @Test(timeout = 30000)
+    public void includeSelectsOtherNames() throws Exception {
+        create("old.txt", 10, 3 * HOUR);
+        create("old.log", 10, 3 * HOUR);
+        manager = start("com.pancras.logging.RetentionManager.maxAge=2h\n"
+                        + "com.pancras.logging.RetentionManager.include=.*\\\\.txt\n");
+        assertEquals(names("old.log"), awaitDeletion("old.txt"));
+    }
+}
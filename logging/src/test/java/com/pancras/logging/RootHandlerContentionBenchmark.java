@@ -0,0 +1,86 @@
+package com.pancras.logging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Measures logging through handlers of the root logger from several
+ * threads at once, which used to serialize on the lock guarding the
+ * initialization of the global handlers.
+ * <p>
+ * Run with <tt>java com.pancras.logging.RootHandlerContentionBenchmark [records per thread]</tt>.
+ */
+public class RootHandlerContentionBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int THREADS[] = { 1, 2, 4, 8 };
+
+    // Does as little as a handler can, so that the cost measured is
+    // that of getting to it.
+    private static final class NullHandler extends Handler {
+        int published;
+
+        @Override
+        public void publish(LogRecord record) {
+            published++;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // Log on the given number of threads, returning the elapsed time in
+    // nanoseconds.
+    private static long run(final Logger logger, int threads, final int perThread)
+            throws InterruptedException {
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        logger.info("message");
+                    }
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String args[]) throws IOException, InterruptedException {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        // No global handlers but ours.
+        LogManager.getLogManager().readConfiguration(
+                new ByteArrayInputStream("handlers=\n.level=INFO\n".getBytes("ISO-8859-1")));
+        Logger root = Logger.getLogger("");
+        root.addHandler(new NullHandler());
+        Logger child = Logger.getLogger("RootHandlerContentionBenchmark.child");
+        Logger loggers[] = { root, child };
+        String names[] = { "root", "child" };
+        for (int round = 0; round < ROUNDS; round++) {
+            // The first round warms up.
+            boolean report = round > 0;
+            for (int l = 0; l < loggers.length; l++) {
+                for (int threads : THREADS) {
+                    long elapsed = run(loggers[l], threads, perThread);
+                    if (report) {
+                        System.out.printf("%-5s %d threads: %6.1f ns/record per thread, %6.1f M records/s%n",
+                                names[l], threads, (double) elapsed / perThread,
+                                threads * perThread * 1000.0 / elapsed);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.pancras.logging;
+
+/**
+ * Measures sequence number allocation from several threads at once,
+ * for a few block sizes.
+ * <p>
+ * Run with <tt>java com.pancras.logging.SequenceAllocatorBenchmark [numbers per thread]</tt>.
+ */
+public class SequenceAllocatorBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int THREADS[] = { 1, 2, 4, 8 };
+    private static final int BLOCK_SIZES[] = { 1, 64, 1024 };
+
+    // Take numbers on the given number of threads, returning the
+    // elapsed time in nanoseconds.
+    private static long run(int threads, final int perThread) throws InterruptedException {
+        Thread workers[] = new Thread[threads];
+        final long sink[] = new long[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    long sum = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        sum += SequenceAllocator.next();
+                    }
+                    sink[id] = sum;
+                }
+            };
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) {
+            t.start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(String args[]) throws InterruptedException {
+        int perThread = args.length > 0 ? Integer.parseInt(args[0]) : 5000000;
+        for (int round = 0; round < ROUNDS; round++) {
+            // The first round warms up.
+            boolean report = round > 0;
+            for (int size : BLOCK_SIZES) {
+                SequenceAllocator.setBlockSize(size);
+                for (int threads : THREADS) {
+                    long elapsed = run(threads, perThread);
+                    if (report) {
+                        System.out.printf("block %4d, %d threads: %6.2f ns/number per thread%n",
+                                size, threads, (double) elapsed / perThread);
+                    }
+                }
+            }
+        }
+        SequenceAllocator.setBlockSize(1);
+    }
+}
@@ -0,0 +1,122 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class SequenceAllocatorTest {
+
+    @After
+    public void tearDown() {
+        SequenceAllocator.setBlockSize(1);
+    }
+
+    // Take numbers on several threads at once, checking that each
+    // thread's numbers increase, and return them all.
+    private static long[] takeConcurrently(int threads, final int perThread)
+            throws InterruptedException {
+        final long taken[][] = new long[threads][perThread];
+        Thread workers[] = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long mine[] = taken[t];
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        mine[i] = SequenceAllocator.next();
+                    }
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread t : workers) {
+            t.join();
+        }
+        long all[] = new long[threads * perThread];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 1; i < perThread; i++) {
+                assertTrue(taken[t][i] > taken[t][i - 1]);
+            }
+            System.arraycopy(taken[t], 0, all, t * perThread, perThread);
+        }
+        return all;
+    }
+
+    private static void assertUnique(long numbers[]) {
+        Set<Long> seen = new HashSet<Long>();
+        for (long n : numbers) {
+            assertTrue("duplicate " + n, seen.add(n));
+        }
+    }
+
+    @Test
+    public void recordsTakeIncreasingNumbers() {
+        long last = new LogRecord(Level.INFO, "m").getSequenceNumber();
+        for (int i = 0; i < 100; i++) {
+            long next = new LogRecord(Level.INFO, "m").getSequenceNumber();
+            assertTrue(next > last);
+            last = next;
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void numbersAreUniqueWithoutBlocks() throws InterruptedException {
+        assertUnique(takeConcurrently(4, 20000));
+    }
+
+    @Test(timeout = 30000)
+    public void numbersAreUniqueWithBlocks() throws InterruptedException {
+        SequenceAllocator.setBlockSize(64);
+        assertUnique(takeConcurrently(4, 20000));
+    }
+
+    @Test(timeout = 30000)
+    public void threadsNumberFromTheirOwnBlock() throws InterruptedException {
+        SequenceAllocator.setBlockSize(1024);
+        long first = SequenceAllocator.next();
+        takeConcurrently(2, 10);
+        // The other threads took blocks of their own.
+        assertEquals(first + 1, SequenceAllocator.next());
+    }
+
+    @Test(timeout = 30000)
+    public void changingTheBlockSizeDropsOldBlocks() throws InterruptedException {
+        SequenceAllocator.setBlockSize(1024);
+        SequenceAllocator.next();
+        SequenceAllocator.setBlockSize(1);
+        long between[] = takeConcurrently(2, 2000);
+        SequenceAllocator.setBlockSize(1024);
+        long next = SequenceAllocator.next();
+        for (long n : between) {
+            assertTrue(next > n);
+        }
+    }
+
+    @Test
+    public void orderSortsByTimeThenSequence() {
+        LogRecord a = new LogRecord(Level.INFO, "a");
+        LogRecord b = new LogRecord(Level.INFO, "b");
+        LogRecord c = new LogRecord(Level.INFO, "c");
+        a.setMillis(2000);
+        a.setSequenceNumber(5);
+        b.setMillis(1000);
+        b.setSequenceNumber(9);
+        c.setMillis(2000);
+        c.setSequenceNumber(1);
+        List<LogRecord> records = new ArrayList<LogRecord>(Arrays.asList(a, b, c));
+        SequenceAllocator.sort(records);
+        assertSame(b, records.get(0));
+        assertSame(c, records.get(1));
+        assertSame(a, records.get(2));
+        assertEquals(0, SequenceAllocator.ORDER.compare(a, a));
+    }
+}
@@ -0,0 +1,55 @@
+package com.pancras.logging;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class StreamHandlerTest {
+    // Encodes what LineFormatter formats.
+    static class LineEncoder extends Encoder {
+        @Override
+        public ByteBuffer encode(LogRecord record, Charset charset, ByteBuffer buffer) {
+            return put(buffer, record.getMessage() + "\n", charset);
+        }
+    }
+
+    private static byte[] publish(String encoding, boolean encode, String... messages) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamHandler h = new StreamHandler(out, new LineFormatter());
+        h.setEncoding(encoding);
+        if (encode) {
+            h.setEncoder(new LineEncoder());
+        }
+        for (String msg : messages) {
+            h.publish(new LogRecord(Level.INFO, msg));
+        }
+        h.close();
+        return out.toByteArray();
+    }
+
+    private static void assertEncodedAsWritten(String encoding, String... messages) throws Exception {
+        assertArrayEquals(publish(encoding, false, messages), publish(encoding, true, messages));
+    }
+
+    @Test
+    public void encodedRecordsMatchTheWriter() throws Exception {
+        assertEncodedAsWritten("UTF-8", "first", "second \u00e9");
+    }
+
+    @Test
+    public void encodedUtf16HasOneByteOrderMark() throws Exception {
+        assertEncodedAsWritten("UTF-16", "first", "second \u00e9");
+    }
+
+    @Test
+    public void largeRecordsAreEncodedWhole() throws Exception {
+        char[] big = new char[100 * 1024];
+        Arrays.fill(big, 'x');
+        assertEncodedAsWritten("UTF-8", "small", new String(big), "small again");
+    }
+}